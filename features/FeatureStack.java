@@ -0,0 +1,289 @@
+package features;
+
+import ij.process.ImageProcessor;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import util.Workers;
+
+/**
+ * Class that builds per-pixel feature vectors for pixel classifiers. The
+ * requested features are given as (feature, sigma) pairs; all the features of
+ * the same sigma share one Gaussian derivative bank, so every convolution is
+ * done once no matter how many features consume it. The result is an
+ * interleaved pixel-major matrix: the features of pixel i are stored in
+ * <code>[i * F, (i + 1) * F)</code> where F is the number of features.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti Gutierrez</a>
+ * @version 0.0.1
+ */
+public class FeatureStack {
+
+    /**
+     * The features that can be placed in the stack
+     */
+    public enum Feature {
+
+        /** Gaussian smoothed intensity */
+        SMOOTH,
+        /** Magnitude of the gradient (dX^2 + dY^2)^(1/2) */
+        GRADIENT_MAGNITUDE,
+        /** Laplacian dXX + dYY */
+        LAPLACIAN,
+        /** Smallest eigenvalue of the Hessian matrix */
+        HESSIAN_L1,
+        /** Largest eigenvalue of the Hessian matrix */
+        HESSIAN_L2,
+        /** Single scale Frangi vesselness */
+        FRANGI
+    }
+
+    /** The <code>ImageProcessor</code> to extract the features */
+    private ImageProcessor ip;
+
+    /** Requested features, in output order */
+    private ArrayList<Feature> features;
+
+    /** Sigma of each requested feature */
+    private ArrayList<Float> sigmas;
+
+    /** Frangi Beta parameter */
+    private double beta = 0.5;
+
+    /** Frangi C parameter */
+    private double c = 15;
+
+    /** Number of threads for the sweep */
+    private int threads;
+
+    /**
+     * Creates an empty feature stack for the given image.
+     *
+     * @param ip the base image
+     */
+    public FeatureStack(ImageProcessor ip) {
+        this.ip = ip;
+        this.features = new ArrayList<Feature>();
+        this.sigmas = new ArrayList<Float>();
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Appends a feature computed at the scale sigma to the stack.
+     *
+     * @param feature the feature
+     * @param sigma the standar deviation of the Gaussian function
+     */
+    public void addFeature(Feature feature, float sigma) {
+        if (sigma <= 0) {
+            throw new IllegalArgumentException("Sigma must be positive");
+        }
+        features.add(feature);
+        sigmas.add(sigma);
+    }
+
+    /**
+     * Computes all the requested features. First builds one derivative bank
+     * per distinct sigma, convolving only the derivatives that some feature
+     * needs, then fills the interleaved matrix in one parallel sweep over row
+     * bands.
+     *
+     * @return a <code>float[width * height * F]</code> pixel-major feature
+     * matrix
+     */
+    public float[] compute() {
+        final int F = features.size();
+        final int N = ip.getWidth() * ip.getHeight();
+
+        // plan: one derivative bank for each distinct sigma
+        ImageProcessor base = ip.convertToFloat();
+        Map<Float, ImageDerivative> banks = new LinkedHashMap<Float, ImageDerivative>();
+        for (Float s : sigmas) {
+            if (!banks.containsKey(s)) {
+                banks.put(s, new ImageDerivative(base, s));
+            }
+        }
+
+        // resolve the inputs of each feature
+        final Feature[] kind = features.toArray(new Feature[F]);
+        final float[] scale = new float[F];
+        final float[][][] inputs = new float[F][][];
+        ArrayList<Runnable> jobs = new ArrayList<Runnable>();
+        for (final ImageDerivative bank : banks.values()) {
+            final boolean[] needed = new boolean[6];
+            for (int f = 0; f < F; f++) {
+                if (sigmas.get(f) == bank.getSigma()) {
+                    markNeeded(kind[f], needed);
+                }
+            }
+            jobs.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (needed[0]) bank.getG();
+                    if (needed[1]) bank.getDX();
+                    if (needed[2]) bank.getDY();
+                    if (needed[3]) bank.getDXX();
+                    if (needed[4]) bank.getDXY();
+                    if (needed[5]) bank.getDYY();
+                }
+            });
+        }
+        Workers.run(jobs);
+
+        for (int f = 0; f < F; f++) {
+            ImageDerivative bank = banks.get(sigmas.get(f));
+            scale[f] = bank.getSigma();
+            switch (kind[f]) {
+                case SMOOTH:
+                    inputs[f] = new float[][]{bank.getG()};
+                    break;
+                case GRADIENT_MAGNITUDE:
+                    inputs[f] = new float[][]{bank.getDX(), bank.getDY()};
+                    break;
+                case LAPLACIAN:
+                    inputs[f] = new float[][]{bank.getDXX(), bank.getDYY()};
+                    break;
+                default:
+                    inputs[f] = new float[][]{bank.getDXX(), bank.getDXY(), bank.getDYY()};
+                    break;
+            }
+        }
+
+        // one sweep filling the pixel-major matrix
+        final float[] matrix = new float[N * F];
+        final int height = ip.getHeight();
+        final int width = ip.getWidth();
+        final int band = (height + threads - 1) / threads;
+        jobs.clear();
+        for (int t = 0; t < threads; t++) {
+            final int y0 = t * band;
+            final int y1 = Math.min(height, y0 + band);
+            if (y0 >= y1) {
+                break;
+            }
+            jobs.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = y0 * width; i < y1 * width; i++) {
+                        int offset = i * F;
+                        for (int f = 0; f < F; f++) {
+                            matrix[offset + f] = feature(kind[f], inputs[f], scale[f], i);
+                        }
+                    }
+                }
+            });
+        }
+        Workers.run(jobs);
+
+        return matrix;
+    }
+
+    /**
+     * Evaluates one feature on the pixel i.
+     */
+    private float feature(Feature kind, float[][] in, float sigma, int i) {
+        switch (kind) {
+            case SMOOTH:
+                return in[0][i];
+            case GRADIENT_MAGNITUDE:
+                return (float) Math.sqrt(in[0][i] * in[0][i] + in[1][i] * in[1][i]);
+            case LAPLACIAN:
+                return in[0][i] + in[1][i];
+            default:
+                break;
+        }
+
+        double xx = in[0][i];
+        double xy = in[1][i];
+        double yy = in[2][i];
+        double trace = xx + yy;
+        double alpha = Math.sqrt((xx - yy) * (xx - yy) + (4 * xy * xy));
+        double l1 = (trace - alpha) * 0.5;
+        double l2 = (trace + alpha) * 0.5;
+
+        switch (kind) {
+            case HESSIAN_L1:
+                return (float) l1;
+            case HESSIAN_L2:
+                return (float) l2;
+            default:
+                // same response as Frangi.tubness2D for a single scale
+                double scaleSquare = sigma * sigma;
+                l1 *= scaleSquare;
+                l2 *= scaleSquare;
+                if (l2 <= 0) {
+                    return 0;
+                }
+                double Rb = l1 / l2;
+                double S = Math.sqrt((l1 * l1) + (l2 * l2));
+                return (float) (Math.exp(-((Rb * Rb) / (2 * beta * beta)))
+                        * (1 - Math.exp(-((S * S) / (2 * c * c)))));
+        }
+    }
+
+    /**
+     * Marks the members of the derivative bank [G, dX, dY, dXX, dXY, dYY]
+     * needed by the given feature.
+     */
+    private static void markNeeded(Feature kind, boolean[] needed) {
+        switch (kind) {
+            case SMOOTH:
+                needed[0] = true;
+                break;
+            case GRADIENT_MAGNITUDE:
+                needed[1] = true;
+                needed[2] = true;
+                break;
+            case LAPLACIAN:
+                needed[3] = true;
+                needed[5] = true;
+                break;
+            default:
+                needed[3] = true;
+                needed[4] = true;
+                needed[5] = true;
+                break;
+        }
+    }
+
+    /**
+     * @return the number of features F of each pixel vector
+     */
+    public int getNumberOfFeatures() {
+        return features.size();
+    }
+
+    /**
+     * @return a readable name for each column of the feature matrix
+     */
+    public String[] getFeatureNames() {
+        String[] names = new String[features.size()];
+        for (int f = 0; f < names.length; f++) {
+            names[f] = features.get(f) + "_" + sigmas.get(f);
+        }
+        return names;
+    }
+
+    /**
+     * Sets the Frangi vesselness parameters.
+     *
+     * @param beta
+     * @param c
+     */
+    public void setFrangiParameters(double beta, double c) {
+        this.beta = beta;
+        this.c = c;
+    }
+
+    /**
+     * @param threads the number of threads to use
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+}
@@ -1,6 +1,7 @@
 package features;
 
 import ij.plugin.filter.Convolver;
+import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 
 /**
@@ -16,6 +17,9 @@ public class ImageDerivative {
     /** The standar deviation for the Gaussian function */
     private float sigma;
 
+    /** Gaussian smoothed image */
+    private float[] G;
+
     /** First partial derivative on X */
     private float[] dX;
 
@@ -54,6 +58,27 @@ public class ImageDerivative {
     }
 
 
+    /**
+     * Smooths the base image with the Gaussian function, the zero order
+     * member of the derivative bank.
+     *
+     * @return a new <code>FloatProcessor</code> corresponding to the smoothed
+     * image.
+     */
+    public ImageProcessor smooth() {
+        ImageProcessor image = ip.duplicate();
+        GaussianDerivative gaussian = new GaussianDerivative();
+        float[] gaussianFilter = gaussian.gaussianKernel(sigma);
+
+        convolve.setNormalize(false);
+        convolve.convolveFloat(image, gaussianFilter, gaussianFilter.length, 1);
+        convolve.convolveFloat(image, gaussianFilter, 1, gaussianFilter.length);
+
+        G = (float[]) image.getPixels();
+        return image;
+    }
+
+
     /**
      *
      * @return
@@ -264,7 +289,136 @@ public class ImageDerivative {
     }
 
 
+    /**
+     * Gives the first directional derivative of the base image along the angle
+     * theta. Gaussian derivatives are steerable, so the derivative is obtained
+     * as a linear combination of the cached basis dX and dY:
+     * <code>D(theta) = cos(theta)·dX + sin(theta)·dY</code>
+     * The angle is measured from the x axis in image coordinates (y grows
+     * downwards).
+     *
+     * @param theta the direction in radians
+     * @return a new <code>float[]</code> with the directional derivative
+     */
+    public float[] steerFirst(double theta) {
+        float[] gx = getDX();
+        float[] gy = getDY();
+        float c = (float) Math.cos(theta);
+        float s = (float) Math.sin(theta);
+
+        float[] d = new float[gx.length];
+        for (int i = 0; i < d.length; i++) {
+            d[i] = c * gx[i] + s * gy[i];
+        }
+        return d;
+    }
+
+
+    /**
+     * Gives the second directional derivative of the base image along the angle
+     * theta, as a linear combination of the cached basis dXX, dXY and dYY:
+     * <code>D2(theta) = cos^2(theta)·dXX + 2·cos(theta)·sin(theta)·dXY + sin^2(theta)·dYY</code>
+     *
+     * @param theta the direction in radians
+     * @return a new <code>float[]</code> with the second directional derivative
+     */
+    public float[] steerSecond(double theta) {
+        float[] gxx = getDXX();
+        float[] gxy = getDXY();
+        float[] gyy = getDYY();
+        float c = (float) Math.cos(theta);
+        float s = (float) Math.sin(theta);
+        float cc = c * c;
+        float cs = 2 * c * s;
+        float ss = s * s;
+
+        float[] d = new float[gxx.length];
+        for (int i = 0; i < d.length; i++) {
+            d[i] = cc * gxx[i] + cs * gxy[i] + ss * gyy[i];
+        }
+        return d;
+    }
+
+
+    /**
+     * Computes a bank of first directional derivatives, one for each given
+     * angle. The basis is convolved once, every angle in the bank only costs a
+     * linear combination.
+     *
+     * @param angles the directions in radians
+     * @return an array <code>[angles.length][width * height]</code>
+     */
+    public float[][] steerFirst(double[] angles) {
+        float[][] bank = new float[angles.length][];
+        for (int k = 0; k < angles.length; k++) {
+            bank[k] = steerFirst(angles[k]);
+        }
+        return bank;
+    }
+
+
+    /**
+     * Computes a bank of second directional derivatives, one for each given
+     * angle, from the cached dXX, dXY and dYY basis.
+     *
+     * @param angles the directions in radians
+     * @return an array <code>[angles.length][width * height]</code>
+     */
+    public float[][] steerSecond(double[] angles) {
+        float[][] bank = new float[angles.length][];
+        for (int k = 0; k < angles.length; k++) {
+            bank[k] = steerSecond(angles[k]);
+        }
+        return bank;
+    }
+
+
+    /**
+     * Gives the first directional derivative along theta as a new
+     * <code>FloatProcessor</code>.
+     *
+     * @param theta the direction in radians
+     * @return
+     */
+    public ImageProcessor dTheta(double theta) {
+        return new FloatProcessor(ip.getWidth(), ip.getHeight(), steerFirst(theta));
+    }
+
+
+    /**
+     * Gives the second directional derivative along theta as a new
+     * <code>FloatProcessor</code>.
+     *
+     * @param theta the direction in radians
+     * @return
+     */
+    public ImageProcessor dThetaTheta(double theta) {
+        return new FloatProcessor(ip.getWidth(), ip.getHeight(), steerSecond(theta));
+    }
+
+
+    /**
+     * Generates n equispaced orientations in [0, PI). Second order derivatives
+     * are symmetric with period PI, for first order derivatives the opposite
+     * direction is just the negated response.
+     *
+     * @param n number of orientations
+     * @return the angles in radians
+     */
+    public static double[] orientations(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Number of orientations must be positive");
+        }
+        double[] angles = new double[n];
+        for (int k = 0; k < n; k++) {
+            angles[k] = (Math.PI * k) / n;
+        }
+        return angles;
+    }
+
+
     private void flush() {
+        this.G = null;
         this.dX = null;
         this.dY = null;
         this.dXX = null;
@@ -272,6 +426,17 @@ public class ImageDerivative {
         this.dXY = null;
     }
 
+    /**
+     * @return the Gaussian smoothed image
+     */
+    public float[] getG() {
+        if (G == null) {
+            smooth();
+        }
+        return G;
+    }
+
+
     /**
      * @return the gradX
      */
@@ -0,0 +1,334 @@
+package features;
+
+import ij.process.ImageProcessor;
+import java.util.ArrayList;
+import util.Workers;
+
+/**
+ * Computes Gaussian derivative features over many small images of the same
+ * size in one call. The patches are packed one after another in a single
+ * contiguous <code>float[]</code> buffer of length
+ * <code>count * width * height</code>, the kernels are generated once for the
+ * batch and the patches are filtered by several threads, each one with its
+ * own scratch buffers. Results are returned in the same packed layout.
+ *
+ * The separable convolutions replicate the edge pixels and do not flip the
+ * kernel, as <code>ij.plugin.filter.Convolver</code> does, so each patch
+ * gets the same values as <code>ImageDerivative</code> on that patch.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti Gutierrez</a>
+ * @version 0.0.1
+ */
+public class PatchBatch {
+
+    /** Width of every patch */
+    private final int width;
+
+    /** Height of every patch */
+    private final int height;
+
+    /** The standar deviation for the Gaussian function */
+    private final float sigma;
+
+    /** Gaussian kernel */
+    private final float[] g0;
+
+    /** First derivative Gaussian kernel */
+    private final float[] g1;
+
+    /** Second derivative Gaussian kernel */
+    private final float[] g2;
+
+    /** Number of threads for the sweep */
+    private int threads;
+
+    /**
+     * Creates a batch filter for patches of the given size.
+     *
+     * @param width width of each patch
+     * @param height height of each patch
+     * @param sigma the standar deviation of the Gaussian function
+     */
+    public PatchBatch(int width, int height, float sigma) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Patch size must be positive");
+        }
+        this.width = width;
+        this.height = height;
+        this.sigma = sigma;
+
+        GaussianDerivative gaussian = new GaussianDerivative();
+        this.g0 = gaussian.gaussianKernel(sigma);
+        this.g1 = gaussian.firstDerivativeKernel(sigma);
+        this.g2 = gaussian.secondDerivativeKernel(sigma);
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Packs the given patches in one contiguous buffer. All patches must have
+     * the same size.
+     *
+     * @param patches the images to pack
+     * @return a <code>float[patches.length * width * height]</code>
+     */
+    public static float[] pack(ImageProcessor[] patches) {
+        if (patches.length == 0) {
+            return new float[0];
+        }
+        int w = patches[0].getWidth();
+        int h = patches[0].getHeight();
+        int size = w * h;
+        float[] packed = new float[patches.length * size];
+
+        for (int p = 0; p < patches.length; p++) {
+            ImageProcessor patch = patches[p];
+            if (patch.getWidth() != w || patch.getHeight() != h) {
+                throw new IllegalArgumentException("All patches must have the same size");
+            }
+            int offset = p * size;
+            for (int i = 0; i < size; i++) {
+                packed[offset + i] = patch.getf(i);
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * @param packed the packed patches
+     * @return the first partial derivative on X of every patch
+     */
+    public float[] dX(float[] packed) {
+        return separable(packed, g1, g0);
+    }
+
+    /**
+     * @param packed the packed patches
+     * @return the first partial derivative on Y of every patch
+     */
+    public float[] dY(float[] packed) {
+        return separable(packed, g0, g1);
+    }
+
+    /**
+     * @param packed the packed patches
+     * @return the second partial derivative on X of every patch
+     */
+    public float[] dXX(float[] packed) {
+        return separable(packed, g2, g0);
+    }
+
+    /**
+     * @param packed the packed patches
+     * @return the second partial derivative on Y of every patch
+     */
+    public float[] dYY(float[] packed) {
+        return separable(packed, g0, g2);
+    }
+
+    /**
+     * @param packed the packed patches
+     * @return the second partial derivative on XY of every patch
+     */
+    public float[] dXY(float[] packed) {
+        return separable(packed, g1, g1);
+    }
+
+    /**
+     * Gradient magnitude |G| = (Gx^2 + Gy^2)^(1/2) of every patch.
+     *
+     * @param packed the packed patches
+     * @return the packed magnitudes
+     */
+    public float[] gradientMagnitude(final float[] packed) {
+        final float[] out = new float[checkLength(packed)];
+        sweep(packed.length / (width * height), new PatchOperation() {
+
+            @Override
+            void apply(int offset, float[] tmp, float[] a, float[] b) {
+                filter(packed, offset, g1, g0, tmp, a, 0);
+                filter(packed, offset, g0, g1, tmp, b, 0);
+                for (int i = 0; i < a.length; i++) {
+                    out[offset + i] = (float) Math.sqrt(a[i] * a[i] + b[i] * b[i]);
+                }
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Laplacian dXX + dYY of every patch.
+     *
+     * @param packed the packed patches
+     * @return the packed laplacians
+     */
+    public float[] laplacian(final float[] packed) {
+        final float[] out = new float[checkLength(packed)];
+        sweep(packed.length / (width * height), new PatchOperation() {
+
+            @Override
+            void apply(int offset, float[] tmp, float[] a, float[] b) {
+                filter(packed, offset, g2, g0, tmp, a, 0);
+                filter(packed, offset, g0, g2, tmp, b, 0);
+                for (int i = 0; i < a.length; i++) {
+                    out[offset + i] = a[i] + b[i];
+                }
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Computes the eigenvalues of the Hessian matrix of every patch, ordered
+     * l1 < l2 as <code>Hessian.computeEigenValues</code> does.
+     *
+     * @param packed the packed patches
+     * @param l1 output buffer for the smallest eigenvalue, same length as packed
+     * @param l2 output buffer for the largest eigenvalue, same length as packed
+     */
+    public void hessianEigenValues(final float[] packed, final float[] l1, final float[] l2) {
+        int length = checkLength(packed);
+        if (l1.length != length || l2.length != length) {
+            throw new IllegalArgumentException("Output buffers must have the packed length");
+        }
+        sweep(packed.length / (width * height), new PatchOperation() {
+
+            @Override
+            void apply(int offset, float[] tmp, float[] a, float[] b) {
+                // a = Ixx, b = Iyy, Ixy goes directly to l1 and is consumed in place
+                filter(packed, offset, g2, g0, tmp, a, 0);
+                filter(packed, offset, g0, g2, tmp, b, 0);
+                filter(packed, offset, g1, g1, tmp, l1, offset);
+                for (int i = 0; i < a.length; i++) {
+                    float xy = l1[offset + i];
+                    double trace = a[i] + b[i];
+                    double alpha = Math.sqrt((a[i] - b[i]) * (a[i] - b[i]) + (4 * xy * xy));
+                    l1[offset + i] = (float) ((trace - alpha) * 0.5);
+                    l2[offset + i] = (float) ((trace + alpha) * 0.5);
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies a separable filter to every patch.
+     */
+    private float[] separable(final float[] packed, final float[] rowKernel, final float[] colKernel) {
+        final float[] out = new float[checkLength(packed)];
+        sweep(packed.length / (width * height), new PatchOperation() {
+
+            @Override
+            void apply(int offset, float[] tmp, float[] a, float[] b) {
+                filter(packed, offset, rowKernel, colKernel, tmp, out, offset);
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Convolves one patch with rowKernel along X and then with colKernel along
+     * Y, replicating the edge pixels.
+     *
+     * @param in packed input
+     * @param inOffset first pixel of the patch in the input
+     * @param tmp scratch buffer of one patch
+     * @param out output buffer
+     * @param outOffset first pixel of the patch in the output
+     */
+    private void filter(float[] in, int inOffset, float[] rowKernel, float[] colKernel,
+            float[] tmp, float[] out, int outOffset) {
+        int rh = rowKernel.length / 2;
+        for (int y = 0; y < height; y++) {
+            int row = inOffset + y * width;
+            for (int x = 0; x < width; x++) {
+                float sum = 0;
+                for (int k = 0; k < rowKernel.length; k++) {
+                    int xx = x + k - rh;
+                    xx = (xx < 0) ? 0 : (xx >= width ? width - 1 : xx);
+                    sum += in[row + xx] * rowKernel[k];
+                }
+                tmp[y * width + x] = sum;
+            }
+        }
+
+        int ch = colKernel.length / 2;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float sum = 0;
+                for (int k = 0; k < colKernel.length; k++) {
+                    int yy = y + k - ch;
+                    yy = (yy < 0) ? 0 : (yy >= height ? height - 1 : yy);
+                    sum += tmp[yy * width + x] * colKernel[k];
+                }
+                out[outOffset + y * width + x] = sum;
+            }
+        }
+    }
+
+    /**
+     * An operation applied on one patch, with per thread scratch buffers of
+     * one patch size.
+     */
+    private abstract static class PatchOperation {
+
+        abstract void apply(int offset, float[] tmp, float[] a, float[] b);
+    }
+
+    /**
+     * Splits the patches in contiguous ranges, one for each thread.
+     */
+    private void sweep(final int count, final PatchOperation operation) {
+        final int size = width * height;
+        int n = Math.max(1, Math.min(threads, count));
+        final int chunk = (count + n - 1) / n;
+        ArrayList<Runnable> jobs = new ArrayList<Runnable>(n);
+
+        for (int t = 0; t < n; t++) {
+            final int p0 = t * chunk;
+            final int p1 = Math.min(count, p0 + chunk);
+            jobs.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    float[] tmp = new float[size];
+                    float[] a = new float[size];
+                    float[] b = new float[size];
+                    for (int p = p0; p < p1; p++) {
+                        operation.apply(p * size, tmp, a, b);
+                    }
+                }
+            });
+        }
+        Workers.run(jobs);
+    }
+
+    private int checkLength(float[] packed) {
+        if (packed.length % (width * height) != 0) {
+            throw new IllegalArgumentException("Buffer length is not a multiple of the patch size");
+        }
+        return packed.length;
+    }
+
+    /**
+     * @return the number of patches in the given packed buffer
+     */
+    public int count(float[] packed) {
+        return checkLength(packed) / (width * height);
+    }
+
+    /**
+     * @return the sigma
+     */
+    public float getSigma() {
+        return sigma;
+    }
+
+    /**
+     * @param threads the number of threads to use
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+}
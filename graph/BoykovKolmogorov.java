@@ -1,8 +1,8 @@
 package graph;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.LinkedList;
-import java.util.Stack;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,13 +34,18 @@ public class BoykovKolmogorov {
      */
     private Vertex target;
     /**
-     *
+     * Names of the active vertexes. A vertex freed while in the queue is left
+     * there and skipped when it reaches the front
      */
-    private LinkedList<Vertex> active;
+    private IntQueue active;
     /**
-     *
+     * Flags of the vertexes in the active queue, indexed by vertex name
+     */
+    private boolean[] inActive;
+    /**
+     * Names of the orphan vertexes
      */
-    private LinkedList<Vertex> orphans;
+    private IntQueue orphans;
     /**
      * Flag indicating the affiliation of each vertex, for vertexes in S tree
      */
@@ -48,6 +53,19 @@ public class BoykovKolmogorov {
      * Node belongs to?
      */
     private int[] belongsToTree;
+    /**
+     * Edge between each vertex and its parent, indexed by vertex name
+     */
+    private Edge[] parentEdge;
+    /**
+     * Edge from the source to each vertex, indexed by vertex name
+     */
+    private Edge[] sourceEdges;
+    /**
+     * Edge from the sink to each vertex, the sister arc of its t-link,
+     * indexed by vertex name
+     */
+    private Edge[] sinkEdges;
     /**
      * S-tree
      */
@@ -60,6 +78,24 @@ public class BoykovKolmogorov {
      * Not belonging to any tree
      */
     private static final int NA = 0;
+    /**
+     * Distance of the vertexes with no valid origin
+     */
+    private static final int INFINITE = Integer.MAX_VALUE;
+    /**
+     * Time of the last check of the origin of each vertex, indexed by vertex
+     * name
+     */
+    private int[] ts;
+    /**
+     * Distance of each vertex to its terminal, valid when its time is the
+     * current time, indexed by vertex name
+     */
+    private int[] dist;
+    /**
+     * Current time, incremented on every augmentation
+     */
+    private int time;
 
     /**
      *
@@ -72,30 +108,95 @@ public class BoykovKolmogorov {
         this.source = source;
         this.target = target;
 
-        this.active = new LinkedList<Vertex>();
-        active.add(source);
-        active.add(target);
+        this.active = new IntQueue(graph.size());
+        this.inActive = new boolean[graph.size()];
+        activate(source);
+        activate(target);
 
-        this.orphans = new LinkedList<Vertex>();
+        this.orphans = new IntQueue(graph.size());
+
+        this.ts = new int[graph.size()];
+        this.dist = new int[graph.size()];
 
         this.belongsToTree = new int[graph.size()];
         belongsToTree[source.name()] = S;
         belongsToTree[target.name()] = T;
 
+        // pair every edge with its sister arc and index the terminal edges
+        graph.pairEdges();
+        this.parentEdge = new Edge[graph.size()];
+        this.sourceEdges = new Edge[graph.size()];
+        this.sinkEdges = new Edge[graph.size()];
+        for (Edge e : graph.getEdges2(source)) {
+            sourceEdges[e.getTarget().name()] = e;
+        }
+        for (Edge e : graph.getEdges2(target)) {
+            sinkEdges[e.getTarget().name()] = e;
+        }
     }
 
     /**
+     * The neighbours of each vertex are found through its edges, so the
+     * width of the image isn't needed anymore.
      *
-     * @return
+     * @param width image width
+     * @return the vertexes in the source side of the min cut
      */
     public ArrayList<Vertex> minCut(int width) {
+        return minCut();
+    }
+
+    /**
+     *
+     * @return the vertexes in the source side of the min cut
+     */
+    public ArrayList<Vertex> minCut() {
+        search();
+        return findFinalTreeVertexes();
+    }
+
+    /**
+     * The source side of the min cut is read from the tree labels, so no
+     * vertex objects are collected.
+     *
+     * @return the names of the vertexes in the source side of the min cut
+     */
+    public BitSet sourceSide() {
+        search();
+        BitSet cut = new BitSet(belongsToTree.length);
+        for (int name = 0; name < belongsToTree.length; name++) {
+            if (belongsToTree[name] == S) {
+                cut.set(name);
+            }
+        }
+        return cut;
+    }
+
+    /**
+     * @param name the name of a vertex
+     * @return true if the vertex is in the source side of the min cut
+     */
+    public boolean isSourceSide(int name) {
+        search();
+        return belongsToTree[name] == S;
+    }
+
+    /**
+     * Grows the trees and augments until no path is left. The S tree grows
+     * along the residual arcs leaving its vertexes and the T tree along the
+     * residual arcs entering them, so when it ends the S tree holds exactly
+     * the vertexes reachable from the source in the residual graph, the
+     * source side of the min cut.
+     */
+    private void search() {
         while (true) {
             Edge[] path = grow();
             if (path.length == 0) {
-                return findFinalTreeVertexes();
+                return;
             }
             augment(path);
-            adopt(width);
+            time++;
+            adopt();
         }
     }
 
@@ -108,79 +209,39 @@ public class BoykovKolmogorov {
      */
     public Edge[] grow() {
         while (!active.isEmpty()) {
-            Vertex p = active.getFirst();
+            Vertex p = graph.getVertex(active.peek());
+            if (tree(p) == NA) {
+                // p was freed while in the queue
+                inActive[active.poll()] = false;
+                continue;
+            }
             ArrayList<Edge> currentEdges;
             try {
                 currentEdges = graph.getEdges2(p);
 
                 for (Edge edge : currentEdges) {
-                    // if tree_cap(p->q) > 0
-                    if (edge.getWeight() > 0) {
+                    // if tree_cap(p->q) > 0, the arc p->q in the S tree and
+                    // its sister arc q->p in the T tree
+                    Edge arc = (tree(p) == S) ? edge : edge.getReverse();
+                    if (arc.getWeight() > 0) {
                         Vertex q = edge.getTarget();
                         // if vertex is free
                         if (tree(q) == NA) {
                             q.setParent(p);
-                            switch (tree(p)) {
-                                case S:
-                                    belongsToTree[q.name()] = S;
-                                    break;
-                                case T:
-                                    belongsToTree[q.name()] = T;
-                                    break;
-                            }
-                            active.add(q);
+                            parentEdge[q.name()] = arc;
+                            ts[q.name()] = ts[p.name()];
+                            dist[q.name()] = dist[p.name()] + 1;
+                            belongsToTree[q.name()] = tree(p);
+                            activate(q);
                         }
-                        if ((tree(q) != NA) && (tree(q)!= tree(p))) {
-                            // return P = PATH_(s->t)                                                       
-//                            Stack<Edge> sPath = new Stack<Edge>();
-                            LinkedList<Edge> sPath = new LinkedList<Edge>();
-
-                            // find path from p to s
-                            Vertex current = p;
-                            Vertex parent = current.parent();
-                            while (parent != null) {
-                                Edge e = graph.getEdge(parent, current);
-                                sPath.push(e);
-                                current = parent;
-                                parent = current.parent();
+                        if ((tree(q) != NA) && (tree(q) != tree(p))) {
+                            // return P = PATH_(s->t)
+                            if (tree(p) == S) {
+                                return path(p, arc, q);
                             }
-
-                            // find path from q to t 
-                            ArrayList<Edge> tPath = new ArrayList<Edge>();
-
-                            current = q;
-                            parent = current.parent();
-                            while (parent != null) {
-                                Edge e = graph.getEdge(parent, current);
-                                tPath.add(e);
-                                current = parent;
-                                parent = current.parent();
-                            }
-
-                            // concatenate the the paths s->p and q->t
-                            Edge[] path = new Edge[sPath.size() + tPath.size() + 1];
-                            int idx = 0;
-                            while (!sPath.isEmpty()) {
-                                path[idx] = sPath.pop();
-                                idx++;
+                            else {
+                                return path(q, arc, p);
                             }
-                            path[idx] = graph.getEdge(p, q);
-                            idx++;
-                            for (Edge e : tPath) {
-                                path[idx] = e;
-                                idx++;
-                            }
-
-                            // print path
-//                        String s = "(";
-//                        for (int i = 0; i < path.length; i++) {
-//                            s += path[i];
-//                            s += ", ";
-//                        }
-//                        s += ")";
-//                        System.out.println(s);
-
-                            return path;
                         }
                     }
                 }
@@ -188,11 +249,50 @@ public class BoykovKolmogorov {
             catch (Exception ex) {
                 Logger.getLogger(BoykovKolmogorov.class.getName()).log(Level.SEVERE, null, ex);
             }
-            active.removeFirst();
+            inActive[active.poll()] = false;
         }
         return new Edge[0];
     }
 
+    /**
+     * Joins the branch of the S tree ending in s, the arc s->t and the branch
+     * of the T tree starting in t. In both trees the edge of a vertex to its
+     * parent has the direction of the flow, from the source to the sink.
+     *
+     * @param s vertex of the S tree
+     * @param bridge arc from s to t with residual capacity
+     * @param t vertex of the T tree
+     * @return the path from the source to the sink
+     */
+    private Edge[] path(Vertex s, Edge bridge, Vertex t) {
+        // find path from s to the source
+        LinkedList<Edge> sPath = new LinkedList<Edge>();
+        for (Vertex current = s; current.parent() != null; current = current.parent()) {
+            sPath.push(parentEdge[current.name()]);
+        }
+
+        // find path from t to the sink
+        ArrayList<Edge> tPath = new ArrayList<Edge>();
+        for (Vertex current = t; current.parent() != null; current = current.parent()) {
+            tPath.add(parentEdge[current.name()]);
+        }
+
+        // concatenate the the paths source->s and t->sink
+        Edge[] path = new Edge[sPath.size() + tPath.size() + 1];
+        int idx = 0;
+        while (!sPath.isEmpty()) {
+            path[idx] = sPath.pop();
+            idx++;
+        }
+        path[idx] = bridge;
+        idx++;
+        for (Edge e : tPath) {
+            path[idx] = e;
+            idx++;
+        }
+        return path;
+    }
+
     /**
      *
      * @param path
@@ -212,14 +312,8 @@ public class BoykovKolmogorov {
             Edge edge = path[i];
             edge.setWeight(edge.getWeight() - delta);
 
-            Edge residualEdge = graph.getEdge(edge.getTarget(), edge.getSource());
-            if (residualEdge == null) {
-                residualEdge = new Edge(edge.getTarget(), edge.getSource(), delta);
-                graph.addEdge(residualEdge);
-            }
-            else {
-                residualEdge.setWeight(residualEdge.getWeight() + delta);
-            }
+            Edge residualEdge = edge.getReverse();
+            residualEdge.setWeight(residualEdge.getWeight() + delta);
 
             if (edge.getWeight() <= 0) {
                 Vertex p = edge.getSource();
@@ -227,11 +321,11 @@ public class BoykovKolmogorov {
 
                 if (tree(p) == S && tree(q) == S) {
                     q.setParent(null);
-                    orphans.add(q);
+                    orphans.add(q.name());
                 }
                 if (tree(p) == T && tree(q) == T) {
                     p.setParent(null);
-                    orphans.add(p);
+                    orphans.add(p.name());
                 }
             }
         }
@@ -243,10 +337,9 @@ public class BoykovKolmogorov {
      * tree; in case of success, p remains in the tree but with a new parent;
      * otherwise, it becomes a free node and all its children are added to O.
      */
-    private void adopt(int width) {
+    private void adopt() {
         while (!orphans.isEmpty()) {
-//            System.out.println(orphans.size());
-            Vertex p = orphans.pop();
+            Vertex p = graph.getVertex(orphans.poll());
 
             // process p
             // find a new valid parent for p
@@ -255,52 +348,71 @@ public class BoykovKolmogorov {
             // fisrt check if source or sink can be a valid parent
             switch (tree(p)) {
                 case S:
-                    Edge es = graph.getEdge(source, p);
-                    if (es.getWeight() > 0) {
+                    Edge es = sourceEdges[p.name()];
+                    if (es != null && es.getWeight() > 0) {
                         p.setParent(source);
+                        parentEdge[p.name()] = es;
                         findValidParent = true;
                     }
                     break;
                 case T:
-                    Edge et = graph.getEdge(target, p);
-                    if (et.getWeight() > 0) {
+                    // the t-link p->sink, the sister arc of the edge of the sink
+                    Edge et = (sinkEdges[p.name()] == null) ? null : sinkEdges[p.name()].getReverse();
+                    if (et != null && et.getWeight() > 0) {
                         p.setParent(target);
+                        parentEdge[p.name()] = et;
                         findValidParent = true;
                     }
                     break;
             }
 
-            // find a valid parent with vertex neighbours 
-            int[] neighbours = this.getNeighbours(p.name(), width);
-            for (int i = 0; i < neighbours.length; i++) {
-                if (neighbours[i] > 0) {
-                    Edge e = graph.getEdge(new Vertex(neighbours[i]), p);
-                    if (e.getWeight() > 0) {
-                        Vertex q = e.getSource();
-                        if ((tree(q) == tree(p)) && validOrigin(q)) {
+            ArrayList<Edge> neighbours = graph.getEdges2(p);
+            if (findValidParent) {
+                ts[p.name()] = time;
+                dist[p.name()] = 1;
+            }
+            else {
+                // find the valid parent closest to the terminal among the
+                // vertex neighbours, through the arcs q->p in the S tree and
+                // p->q in the T tree
+                int minDist = INFINITE;
+                for (Edge pe : neighbours) {
+                    Vertex q = pe.getTarget();
+                    if (q == source || q == target) {
+                        continue;
+                    }
+                    Edge e = (tree(p) == S) ? pe.getReverse() : pe;
+                    if (e.getWeight() > 0 && tree(q) == tree(p)) {
+                        int d = originDistance(q);
+                        if (d < minDist) {
+                            minDist = d;
                             p.setParent(q);
+                            parentEdge[p.name()] = e;
                             findValidParent = true;
-                            break;
                         }
                     }
                 }
+                if (findValidParent) {
+                    ts[p.name()] = time;
+                    dist[p.name()] = minDist + 1;
+                }
             }
 
             // If p does not find a valid parent, then p becomes a free node
             if (!findValidParent) {
-                for (int i = 0; i < neighbours.length; i++) {
-                    if (neighbours[i] > 0) {
+                for (Edge pe : neighbours) {
+                    Vertex q = pe.getTarget();
+                    if (q != source && q != target) {
 
-                        Edge e = graph.getEdge(new Vertex(neighbours[i]), p);
-                        Vertex q = e.getSource();
+                        Edge e = (tree(p) == S) ? pe.getReverse() : pe;
                         if (tree(q) == tree(p)) {
                             if (e.getWeight() > 0) {
-                                active.add(q);
+                                activate(q);
                             }
                             Vertex qParent = q.parent();
                             if (qParent != null) {
                                 if (qParent.equals(p)) {
-                                    orphans.add(q);
+                                    orphans.add(q.name());
                                     q.setParent(null);
                                 }
                             }
@@ -308,21 +420,23 @@ public class BoykovKolmogorov {
                     }
                 }
 
-                // p becomes free
+                // p becomes free, if it is in the active queue grow() skips it
                 belongsToTree[p.name()] = NA;
-
-                while (active.remove(p)) {
-                }
-
-//                int idx = active.indexOf(p);
-//                while (idx >= 0) {
-//                    active.remove(idx);
-//                    idx = active.indexOf(p);
-//                }
             }
         }
     }
 
+    /**
+     * Adds the vertex to the active queue, if it isn't already there
+     */
+    private void activate(Vertex v) {
+        int name = v.name();
+        if (!inActive[name]) {
+            inActive[name] = true;
+            active.add(name);
+        }
+    }
+
     /**
      * Indicates the affiliation of each vertex v
      *
@@ -334,99 +448,57 @@ public class BoykovKolmogorov {
     }
 
     /**
-     * Verify if a given
-     * <code>Vertex</code> has a conected path to the source or sink vertex;
+     * Finds the distance from a given <code>Vertex</code> to the source or
+     * sink vertex through its parents. The walk stops at the first vertex
+     * whose distance was already verified after the last augmentation, and
+     * every vertex on the way is marked with its distance, so each origin
+     * check of the same adoption step takes a few steps.
      *
      * @param q current Vertex
      *
-     * @return true if valid path to the source or sink vertex was found, or
-     * false in other case
+     * @return the distance to the source or sink vertex, or
+     * <code>INFINITE</code> if q has no valid path to them
      */
-    private boolean validOrigin(Vertex q) {
-        Vertex parent = q.parent();
-        while (parent != null) {
+    private int originDistance(Vertex q) {
+        int d = 0;
+        Vertex v = q;
+        while (true) {
+            if (ts[v.name()] == time) {
+                d += dist[v.name()];
+                break;
+            }
+            Vertex parent = v.parent();
+            if (parent == null) {
+                return INFINITE;
+            }
+            d++;
             if (parent == source || parent == target) {
-                return true;
+                ts[v.name()] = time;
+                dist[v.name()] = 1;
+                break;
             }
-            parent = parent.parent();
+            v = parent;
+        }
+
+        // mark the vertexes of the path with their distance
+        int k = d;
+        for (v = q; ts[v.name()] != time; v = v.parent()) {
+            ts[v.name()] = time;
+            dist[v.name()] = k--;
         }
-        return false;
+        return d;
     }
 
     /**
-     * Find the four neighbours of the given pixel index.
-     *
-     * @param idx
+     * Collects the vertexes of the S tree in one pass over the tree labels
      *
-     * @return an array of 4 neighbours of the given index pixel.
+     * @return the vertexes in the source side of the min cut
      */
-    private int[] getNeighbours(int idx, int width) {
-        idx--;
-        int x = idx % width;
-        int y = idx / width;
-
-        int[] neighbours = new int[4];
-
-        if ((x - 1) < 0) {
-            neighbours[0] = -1;
-        }
-        else {
-            neighbours[0] = ((y * width) + (x - 1)) + 1;
-        }
-
-        if ((y - 1) < 0) {
-            neighbours[1] = -1;
-        }
-        else {
-            neighbours[1] = (((y - 1) * width) + x) + 1;
-        }
-
-        if ((x + 1) == width) {
-            neighbours[2] = -1;
-        }
-        else {
-            neighbours[2] = ((y * width) + (x + 1)) + 1;
-        }
-
-        int n_idx = ((y + 1) * width) + x;
-        if (n_idx >= (graph.size() - 2)) {
-            neighbours[3] = - 1;
-        }
-        else {
-            neighbours[3] = ++n_idx;
-        }
-
-        return neighbours;
-    }
-
     private ArrayList<Vertex> findFinalTreeVertexes() {
         ArrayList<Vertex> treeVertexex = new ArrayList<Vertex>();
-        treeVertexex.add(source);
-
-        Stack<Vertex> S = new Stack<Vertex>();
-        S.push(source);
-        source.setVisited(true);
-
-        // create a tree until target is reached 
-        while (!S.empty()) {
-            try {
-                Vertex v = S.pop();
-                ArrayList<Edge> E = graph.getEdges(v);
-                // if v has an unvisited neighbour w                
-                for (Edge edge : E) {
-                    if (edge.getWeight() > 0) {
-                        Vertex w = edge.getTarget();
-                        if (!w.isVisited()) {
-                            treeVertexex.add(w);
-                            w.setVisited(true);
-                            w.setParent(v);
-                            S.push(w);
-                        }
-                    }
-                }
-            }
-            catch (Exception ex) {
-                Logger.getLogger(BoykovKolmogorov.class.getName()).log(Level.SEVERE, null, ex);
+        for (int name = 0; name < belongsToTree.length; name++) {
+            if (belongsToTree[name] == S) {
+                treeVertexex.add(graph.getVertex(name));
             }
         }
         return treeVertexex;
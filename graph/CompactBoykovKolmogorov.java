@@ -0,0 +1,602 @@
+package graph;
+
+import java.util.BitSet;
+
+/**
+ * The Boykov-Kolmogorov max-flow / min-cut algorithm on a {@link CompactGraph}.
+ * As in Kolmogorov's reference implementation, the arcs from the source and
+ * to the sink are folded into one signed terminal capacity per vertex
+ * (positive towards the source, negative towards the sink); the search trees
+ * are kept in primitive arrays, where the parent of each vertex is the arc
+ * from the vertex to its parent; and the active and orphan sets are circular
+ * queues of vertex indexes. The residual capacities of the graph are updated
+ * in place, the terminal arcs are left with zero capacity.
+ *
+ * The solver is dynamic, as proposed by Kohli and Torr: after the max flow
+ * is found the capacities can be changed with
+ * {@link #addTerminalCapacities(int, float, float)} and
+ * {@link #addEdgeCapacity(int, float)}, and the next call to
+ * {@link #maxFlow()} resumes from the current flow and search trees. A
+ * capacity decreased below the flow it carries is reparameterized: the
+ * excess flow is moved to the terminal arcs, which changes the cost of every
+ * cut by the same constant, so the min cut is kept and the flow value is
+ * corrected by that constant. Only the vertexes touched by the changes
+ * become orphans or active, so a small change is solved in a small time.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ *
+ * @Article{Boykov and Kolmogorov 2004, author = "Yuri Boykov and Vladimir
+ * Kolmogorov", title = "An Experimental Comparison of Min-Cut/Max-Flow
+ * Algorithms for Energy Minimization in Vision", journal = "<i>IEEE
+ * TRANSACTIONS ON PATTERN ANALYSIS AND MACHINE INTELLIGENCE</i>", year =
+ * "2004", pages = "1124-1137"}
+ */
+public class CompactBoykovKolmogorov implements MaxFlow {
+
+    /** Not belonging to any tree */
+    static final byte FREE = 0;
+
+    /** S-tree */
+    static final byte S = 1;
+
+    /** T-tree */
+    static final byte T = 2;
+
+    /** Parent of the vertexes linked to a terminal */
+    static final int TERMINAL = -1;
+
+    /** Parent of the orphan vertexes */
+    static final int ORPHAN = -2;
+
+    /** Parent of the free vertexes */
+    static final int NONE = -3;
+
+    /** Distance of the vertexes with no valid origin */
+    static final int INFINITE = Integer.MAX_VALUE;
+
+    /** The given graph to apply this algorithm */
+    private final CompactGraph graph;
+
+    /** the source vertex for the algorithm */
+    private final int source;
+
+    /** the sink vertex for the algorithm */
+    private final int sink;
+
+    /** CSR arrays of the graph */
+    private final int[] offsets;
+
+    private final int[] targets;
+
+    private final int[] reverse;
+
+    private final float[] cap;
+
+    /** Residual terminal capacity of each vertex, > 0 from the source, < 0 to the sink */
+    private final float[] trCap;
+
+    /** Tree of each vertex */
+    private final byte[] tree;
+
+    /** Arc from each vertex to its parent, or TERMINAL, ORPHAN or NONE */
+    private final int[] parent;
+
+    /** Active vertexes */
+    private final IntQueue active;
+
+    /** Flags of the vertexes in the active queue */
+    private final boolean[] inActive;
+
+    /** Orphan vertexes */
+    private final IntQueue orphans;
+
+    /** Time of the last origin check of each vertex */
+    private final int[] ts;
+
+    /** Distance of each vertex to its terminal, valid when ts is the current time */
+    private final int[] dist;
+
+    /** Current time, incremented on every augmentation */
+    private int time;
+
+    /** Current flow */
+    private double flow;
+
+    /** True once the max flow was found */
+    private boolean solved;
+
+    /**
+     * Prepares the solver, folding the terminal arcs into the terminal
+     * capacities and initializing the search trees.
+     *
+     * @param graph the graph, its capacities are modified
+     * @param source the source vertex index
+     * @param sink the sink vertex index
+     */
+    public CompactBoykovKolmogorov(CompactGraph graph, int source, int sink) {
+        if (source == sink) {
+            throw new IllegalArgumentException("Source and sink must be different");
+        }
+        int n = graph.size();
+        this.graph = graph;
+        this.source = source;
+        this.sink = sink;
+        this.offsets = graph.offsets;
+        this.targets = graph.targets;
+        this.reverse = graph.reverse;
+        this.cap = graph.capacities;
+        this.trCap = new float[n];
+        this.tree = new byte[n];
+        this.parent = new int[n];
+        this.active = new IntQueue(n);
+        this.inActive = new boolean[n];
+        this.orphans = new IntQueue(n);
+        this.ts = new int[n];
+        this.dist = new int[n];
+
+        // fold source arcs
+        for (int a = offsets[source]; a < offsets[source + 1]; a++) {
+            int v = targets[a];
+            if (v == sink) {
+                flow += cap[a];
+            }
+            else if (v != source) {
+                trCap[v] += cap[a];
+            }
+            cap[a] = 0;
+            cap[reverse[a]] = 0;
+        }
+
+        // fold sink arcs, pushing directly the flow s -> v -> t
+        for (int a = offsets[sink]; a < offsets[sink + 1]; a++) {
+            int v = targets[a];
+            int ra = reverse[a];
+            if (v != source && v != sink) {
+                float ct = cap[ra];
+                if (trCap[v] > 0) {
+                    flow += Math.min(trCap[v], ct);
+                }
+                trCap[v] -= ct;
+            }
+            cap[a] = 0;
+            cap[ra] = 0;
+        }
+
+        for (int v = 0; v < n; v++) {
+            parent[v] = NONE;
+            if (v == source || v == sink) {
+                continue;
+            }
+            if (trCap[v] > 0) {
+                tree[v] = S;
+                parent[v] = TERMINAL;
+                dist[v] = 1;
+                activate(v);
+            }
+            else if (trCap[v] < 0) {
+                tree[v] = T;
+                parent[v] = TERMINAL;
+                dist[v] = 1;
+                activate(v);
+            }
+        }
+    }
+
+    /**
+     * Grows the search trees, augmenting every path found, until no active
+     * vertex is left.
+     *
+     * @return the value of the maximum flow
+     */
+    @Override
+    public double maxFlow() {
+        if (solved) {
+            return flow;
+        }
+        if (!orphans.isEmpty()) {
+            // orphans left by capacity changes
+            time++;
+            adopt();
+        }
+        int current = -1;
+        while (true) {
+            int v = current;
+            current = -1;
+            if (v < 0 || tree[v] == FREE) {
+                v = nextActive();
+                if (v < 0) {
+                    break;
+                }
+            }
+
+            // grow
+            int middle = -1;
+            int sNode = -1;
+            int tNode = -1;
+            if (tree[v] == S) {
+                for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+                    if (cap[a] > 0) {
+                        int w = targets[a];
+                        if (tree[w] == FREE) {
+                            tree[w] = S;
+                            parent[w] = reverse[a];
+                            ts[w] = ts[v];
+                            dist[w] = dist[v] + 1;
+                            activate(w);
+                        }
+                        else if (tree[w] == T) {
+                            middle = a;
+                            sNode = v;
+                            tNode = w;
+                            break;
+                        }
+                        else if (ts[w] <= ts[v] && dist[w] > dist[v]) {
+                            // v is a closer parent for w
+                            parent[w] = reverse[a];
+                            ts[w] = ts[v];
+                            dist[w] = dist[v] + 1;
+                        }
+                    }
+                }
+            }
+            else {
+                for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+                    int ra = reverse[a];
+                    if (cap[ra] > 0) {
+                        int w = targets[a];
+                        if (tree[w] == FREE) {
+                            tree[w] = T;
+                            parent[w] = ra;
+                            ts[w] = ts[v];
+                            dist[w] = dist[v] + 1;
+                            activate(w);
+                        }
+                        else if (tree[w] == S) {
+                            middle = ra;
+                            sNode = w;
+                            tNode = v;
+                            break;
+                        }
+                        else if (ts[w] <= ts[v] && dist[w] > dist[v]) {
+                            // v is a closer parent for w
+                            parent[w] = ra;
+                            ts[w] = ts[v];
+                            dist[w] = dist[v] + 1;
+                        }
+                    }
+                }
+            }
+
+            if (middle >= 0) {
+                // v may have more paths, process it again
+                current = v;
+                augment(middle, sNode, tNode);
+                time++;
+                adopt();
+            }
+        }
+        solved = true;
+        return flow;
+    }
+
+    /**
+     * Pushes the bottleneck capacity through the path source -> sNode ->
+     * tNode -> sink, the vertexes whose parent arc gets saturated become
+     * orphans.
+     */
+    private void augment(int middle, int sNode, int tNode) {
+        // find the bottleneck capacity
+        float delta = cap[middle];
+        int x = sNode;
+        while (parent[x] != TERMINAL) {
+            int a = parent[x];
+            delta = Math.min(delta, cap[reverse[a]]);
+            x = targets[a];
+        }
+        delta = Math.min(delta, trCap[x]);
+
+        x = tNode;
+        while (parent[x] != TERMINAL) {
+            int a = parent[x];
+            delta = Math.min(delta, cap[a]);
+            x = targets[a];
+        }
+        delta = Math.min(delta, -trCap[x]);
+
+        // update the residual graph
+        cap[middle] -= delta;
+        cap[reverse[middle]] += delta;
+
+        x = sNode;
+        while (parent[x] != TERMINAL) {
+            int a = parent[x];
+            int y = targets[a];
+            cap[a] += delta;
+            cap[reverse[a]] -= delta;
+            if (cap[reverse[a]] <= 0) {
+                makeOrphan(x);
+            }
+            x = y;
+        }
+        trCap[x] -= delta;
+        if (trCap[x] <= 0) {
+            makeOrphan(x);
+        }
+
+        x = tNode;
+        while (parent[x] != TERMINAL) {
+            int a = parent[x];
+            int y = targets[a];
+            cap[reverse[a]] += delta;
+            cap[a] -= delta;
+            if (cap[a] <= 0) {
+                makeOrphan(x);
+            }
+            x = y;
+        }
+        trCap[x] += delta;
+        if (trCap[x] >= 0) {
+            makeOrphan(x);
+        }
+
+        flow += delta;
+    }
+
+    /**
+     * Every orphan tries to find a new valid parent within the same search
+     * tree; otherwise it becomes a free vertex and its children become
+     * orphans.
+     */
+    private void adopt() {
+        while (!orphans.isEmpty()) {
+            int v = orphans.poll();
+            byte t = tree[v];
+
+            int best = NONE;
+            int minDist = INFINITE;
+            if ((t == S && trCap[v] > 0) || (t == T && trCap[v] < 0)) {
+                best = TERMINAL;
+                minDist = 0;
+            }
+            else {
+                // the valid parent closest to the terminal
+                for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+                    int w = targets[a];
+                    if (tree[w] == t && residual(t, a) > 0) {
+                        int d = originDistance(w);
+                        if (d < minDist) {
+                            minDist = d;
+                            best = a;
+                        }
+                    }
+                }
+            }
+
+            if (best != NONE) {
+                parent[v] = best;
+                ts[v] = time;
+                dist[v] = minDist + 1;
+                continue;
+            }
+
+            // v becomes free
+            detach(v);
+            tree[v] = FREE;
+            parent[v] = NONE;
+        }
+    }
+
+    /**
+     * Residual capacity from the neighbour to v through the arc a (v -> w) in
+     * the S-tree, or from v to the neighbour in the T-tree.
+     */
+    private float residual(byte t, int a) {
+        return (t == S) ? cap[reverse[a]] : cap[a];
+    }
+
+    /**
+     * Finds the distance from a vertex to its terminal through its parents.
+     * The walk stops at the first vertex already checked since the last
+     * augmentation, and the vertexes on the way are marked with their
+     * distance.
+     *
+     * @return the distance, or INFINITE if w has no valid path to its
+     * terminal
+     */
+    private int originDistance(int w) {
+        int d = 0;
+        int x = w;
+        while (true) {
+            if (ts[x] == time) {
+                d += dist[x];
+                break;
+            }
+            int a = parent[x];
+            d++;
+            if (a == TERMINAL) {
+                ts[x] = time;
+                dist[x] = 1;
+                break;
+            }
+            if (a < 0) {
+                return INFINITE;
+            }
+            x = targets[a];
+        }
+
+        // mark the vertexes of the path with their distance
+        int k = d;
+        for (x = w; ts[x] != time; x = targets[parent[x]]) {
+            ts[x] = time;
+            dist[x] = k--;
+        }
+        return d;
+    }
+
+    private void makeOrphan(int v) {
+        parent[v] = ORPHAN;
+        orphans.add(v);
+    }
+
+    /**
+     * Adds the given amounts to the capacities of the terminal arcs of the
+     * vertex v, from the source and to the sink. The amounts can be negative
+     * as long as the resulting capacities aren't.
+     *
+     * @param v the vertex
+     * @param fromSource change of the capacity of the arc from the source
+     * @param toSink change of the capacity of the arc to the sink
+     */
+    public void addTerminalCapacities(int v, float fromSource, float toSink) {
+        if (v == source || v == sink) {
+            throw new IllegalArgumentException("Terminal arcs of a terminal");
+        }
+        float tc = trCap[v];
+        float cs = fromSource + (tc > 0 ? tc : 0);
+        float ct = toSink + (tc < 0 ? -tc : 0);
+        // the common part, negative if the change removed flow, is moved to the flow value
+        flow += Math.min(cs, ct);
+        trCap[v] = cs - ct;
+        solved = false;
+
+        tc = trCap[v];
+        byte t = (tc > 0) ? S : (tc < 0) ? T : FREE;
+        if (t != FREE) {
+            if (tree[v] != t) {
+                if (tree[v] != FREE) {
+                    detach(v);
+                }
+                tree[v] = t;
+            }
+            if (parent[v] != ORPHAN) {
+                // an orphan in the queue finds its terminal when adopted
+                parent[v] = TERMINAL;
+                ts[v] = time;
+                dist[v] = 1;
+            }
+            activate(v);
+        }
+        else if (parent[v] == TERMINAL) {
+            makeOrphan(v);
+        }
+    }
+
+    /**
+     * Adds the given amount to the capacity of the arc a. If the arc carries
+     * more flow than its new capacity, the excess is rerouted through the
+     * terminal arcs of its ends.
+     *
+     * @param a the arc, not incident to the source or the sink
+     * @param delta change of the capacity, the resulting capacity must be
+     * nonnegative
+     */
+    public void addEdgeCapacity(int a, float delta) {
+        int ra = reverse[a];
+        int u = targets[ra];
+        int w = targets[a];
+        if (u == source || u == sink || w == source || w == sink) {
+            throw new IllegalArgumentException("Use addTerminalCapacities for terminal arcs");
+        }
+        cap[a] += delta;
+        solved = false;
+        if (cap[a] < 0) {
+            // cancel the excess flow of u -> w, sending it from u to the
+            // sink and from the source to w instead
+            float excess = -cap[a];
+            cap[a] = 0;
+            cap[ra] -= excess;
+            flow -= excess;
+            addTerminalCapacities(u, excess, 0);
+            addTerminalCapacities(w, 0, excess);
+        }
+
+        checkParent(u);
+        checkParent(w);
+        if (tree[u] != FREE) {
+            activate(u);
+        }
+        if (tree[w] != FREE) {
+            activate(w);
+        }
+    }
+
+    /**
+     * Makes v an orphan if the arc to its parent has no residual capacity
+     */
+    private void checkParent(int v) {
+        int a = parent[v];
+        if (a >= 0) {
+            float r = (tree[v] == S) ? cap[reverse[a]] : cap[a];
+            if (r <= 0) {
+                makeOrphan(v);
+            }
+        }
+    }
+
+    /**
+     * Prepares v to leave its tree: its children become orphans and the
+     * neighbours of the same tree that could grow into v become active.
+     */
+    private void detach(int v) {
+        byte t = tree[v];
+        for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+            int w = targets[a];
+            if (tree[w] == t) {
+                if (residual(t, a) > 0) {
+                    activate(w);
+                }
+                int pw = parent[w];
+                if (pw >= 0 && targets[pw] == v) {
+                    makeOrphan(w);
+                }
+            }
+        }
+    }
+
+    private void activate(int v) {
+        if (!inActive[v]) {
+            inActive[v] = true;
+            active.add(v);
+        }
+    }
+
+    /**
+     * @return the next active vertex still in a tree, or -1
+     */
+    private int nextActive() {
+        while (!active.isEmpty()) {
+            int v = active.poll();
+            inActive[v] = false;
+            if (tree[v] != FREE) {
+                return v;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean isSourceSide(int v) {
+        maxFlow();
+        return v == source || tree[v] == S;
+    }
+
+    @Override
+    public BitSet sourceSide() {
+        maxFlow();
+        BitSet cut = new BitSet(tree.length);
+        for (int v = 0; v < tree.length; v++) {
+            if (tree[v] == S) {
+                cut.set(v);
+            }
+        }
+        cut.set(source);
+        return cut;
+    }
+
+    /**
+     * @return the graph
+     */
+    public CompactGraph getGraph() {
+        return graph;
+    }
+}
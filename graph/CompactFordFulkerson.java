@@ -0,0 +1,153 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Implements the Min Cut - Max Flow Ford-Fulkerson algorithm on a
+ * {@link CompactGraph}. Augmenting paths are found with an iterative
+ * depth-first search over the CSR arrays; the residual arcs already exist in
+ * the graph, so augmenting a path only updates the capacities of each arc and
+ * its reverse arc.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti Gutierrez<a/>
+ */
+public class CompactFordFulkerson implements MaxFlow {
+
+    /** The given graph to apply this algorithm */
+    private final CompactGraph graph;
+
+    /** the source vertex for the algorithm */
+    private final int source;
+
+    /** the sink vertex for the algorithm */
+    private final int target;
+
+    /** Search stamp of each vertex, a vertex is visited if it equals the current stamp */
+    private final int[] visited;
+
+    /** Arc from the parent of each visited vertex */
+    private final int[] parentArc;
+
+    /** DFS stack of vertexes */
+    private final int[] stack;
+
+    /** Current search stamp */
+    private int stamp;
+
+    /** the maximun flow permited for given graph */
+    private double maxFlow;
+
+    /** True once the max flow was found */
+    private boolean solved;
+
+    /**
+     * Basic constructor to obtain the max flow or min cut on a graph
+     *
+     * @param graph the graph, its capacities are modified
+     * @param source the source vertex index
+     * @param target the sink vertex index
+     */
+    public CompactFordFulkerson(CompactGraph graph, int source, int target) {
+        if (source == target) {
+            throw new IllegalArgumentException("Source and sink must be different");
+        }
+        int n = graph.size();
+        this.graph = graph;
+        this.source = source;
+        this.target = target;
+        this.visited = new int[n];
+        this.parentArc = new int[n];
+        this.stack = new int[n];
+    }
+
+    /**
+     * Augments paths from the source to the target until none is left.
+     *
+     * @return the value of the maximum flow
+     */
+    @Override
+    public double maxFlow() {
+        if (solved) {
+            return maxFlow;
+        }
+        float[] cap = graph.capacities;
+        int[] targets = graph.targets;
+        int[] reverse = graph.reverse;
+        while (findPath()) {
+            // find the minimum residual capacity
+            float weight = Float.MAX_VALUE;
+            for (int v = target; v != source; v = targets[reverse[parentArc[v]]]) {
+                weight = Math.min(weight, cap[parentArc[v]]);
+            }
+            for (int v = target; v != source; v = targets[reverse[parentArc[v]]]) {
+                int a = parentArc[v];
+                cap[a] -= weight;
+                cap[reverse[a]] += weight;
+            }
+            maxFlow += weight;
+        }
+        solved = true;
+        return maxFlow;
+    }
+
+    /**
+     * Depth-first search from the source over the arcs with residual
+     * capacity. Leaves marked with the current stamp the vertexes reached.
+     *
+     * @return true if the target was reached
+     */
+    private boolean findPath() {
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        float[] cap = graph.capacities;
+
+        if (++stamp == 0) {
+            Arrays.fill(visited, 0);
+            stamp = 1;
+        }
+        int top = 0;
+        stack[top++] = source;
+        visited[source] = stamp;
+        while (top > 0) {
+            int v = stack[--top];
+            for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+                int w = targets[a];
+                if (visited[w] != stamp && cap[a] > 0) {
+                    visited[w] = stamp;
+                    parentArc[w] = a;
+                    if (w == target) {
+                        return true;
+                    }
+                    stack[top++] = w;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isSourceSide(int v) {
+        maxFlow();
+        return visited[v] == stamp;
+    }
+
+    @Override
+    public BitSet sourceSide() {
+        maxFlow();
+        BitSet cut = new BitSet(visited.length);
+        for (int v = 0; v < visited.length; v++) {
+            if (visited[v] == stamp) {
+                cut.set(v);
+            }
+        }
+        return cut;
+    }
+
+    /**
+     * @return the maxFlow
+     */
+    public double getMaxFlow() {
+        return maxFlow;
+    }
+}
@@ -0,0 +1,175 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * A compact directed graph in compressed sparse row (CSR) form. Vertexes are
+ * the indexes 0..n-1, the arcs leaving the vertex v are the indexes
+ * <code>[offsets[v], offsets[v + 1])</code> of the arrays <code>targets</code>
+ * and <code>capacities</code>. Every arc a has a reverse arc
+ * <code>reverse[a]</code> going in the opposite direction, possibly with zero
+ * capacity, so residual updates never search the adjacency. No object is
+ * allocated per vertex or per arc.
+ *
+ * The capacities array is the residual graph: the max-flow solvers working
+ * on this graph update it in place, as the <code>Graph</code> based solvers
+ * do with the <code>Edge</code> weights.
+ *
+ * Graphs are built with {@link CompactGraphBuilder}.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class CompactGraph {
+
+    /** Number of vertexes */
+    private final int n;
+
+    /** First arc of each vertex, n + 1 entries */
+    final int[] offsets;
+
+    /** Target vertex of each arc */
+    final int[] targets;
+
+    /** Residual capacity of each arc */
+    final float[] capacities;
+
+    /** Index of the reverse arc of each arc */
+    final int[] reverse;
+
+    /** Name of each vertex in the original <code>Graph</code>, null if vertexes are not renamed */
+    private final int[] names;
+
+    /**
+     * Creates a graph from its CSR arrays. The arrays are not copied.
+     *
+     * @param offsets first arc of each vertex, n + 1 entries
+     * @param targets target vertex of each arc
+     * @param capacities capacity of each arc
+     * @param reverse index of the reverse arc of each arc
+     * @param names sorted names of the vertexes, or null to use the indexes
+     */
+    public CompactGraph(int[] offsets, int[] targets, float[] capacities, int[] reverse, int[] names) {
+        int m = targets.length;
+        if (offsets.length == 0 || offsets[offsets.length - 1] != m
+                || capacities.length != m || reverse.length != m) {
+            throw new IllegalArgumentException("Inconsistent CSR arrays");
+        }
+        if (names != null && names.length != offsets.length - 1) {
+            throw new IllegalArgumentException("There must be one name per vertex");
+        }
+        this.n = offsets.length - 1;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.capacities = capacities;
+        this.reverse = reverse;
+        this.names = names;
+    }
+
+    /**
+     * @return the number of vertexes
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * @return the number of arcs, counting the reverse arcs
+     */
+    public int arcs() {
+        return targets.length;
+    }
+
+    /**
+     * @return the first arc leaving the vertex v
+     */
+    public int firstArc(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * @return one past the last arc leaving the vertex v
+     */
+    public int endArc(int v) {
+        return offsets[v + 1];
+    }
+
+    /**
+     * @return the target vertex of the arc a
+     */
+    public int target(int a) {
+        return targets[a];
+    }
+
+    /**
+     * @return the residual capacity of the arc a
+     */
+    public float capacity(int a) {
+        return capacities[a];
+    }
+
+    /**
+     * @param a the arc
+     * @param capacity the new residual capacity of the arc a
+     */
+    public void setCapacity(int a, float capacity) {
+        capacities[a] = capacity;
+    }
+
+    /**
+     * @return the reverse arc of the arc a
+     */
+    public int reverse(int a) {
+        return reverse[a];
+    }
+
+    /**
+     * Finds the arc from u to v, in O(degree of u).
+     *
+     * @return the arc index, or -1 if there is no such arc
+     */
+    public int findArc(int u, int v) {
+        for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+            if (targets[a] == v) {
+                return a;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gives the index of the vertex with the given name in the original
+     * <code>Graph</code>.
+     *
+     * @param name the vertex name
+     * @return the vertex index, or -1 if there is no such vertex
+     */
+    public int indexOf(int name) {
+        if (names == null) {
+            return (name >= 0 && name < n) ? name : -1;
+        }
+        int i = Arrays.binarySearch(names, name);
+        return (i >= 0) ? i : -1;
+    }
+
+    /**
+     * @return the name in the original <code>Graph</code> of the vertex v
+     */
+    public int name(int v) {
+        return (names == null) ? v : names[v];
+    }
+
+    /**
+     * @return a copy of the residual capacities, to restore the graph with
+     * {@link #restoreCapacities(float[])} after a solver ran on it
+     */
+    public float[] copyCapacities() {
+        return capacities.clone();
+    }
+
+    /**
+     * @param saved capacities saved with {@link #copyCapacities()}
+     */
+    public void restoreCapacities(float[] saved) {
+        System.arraycopy(saved, 0, capacities, 0, capacities.length);
+    }
+}
@@ -0,0 +1,166 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Builds a {@link CompactGraph}. Edges are added as pairs of opposite arcs,
+ * each one with its own capacity, and the CSR arrays are filled by counting
+ * the out degree of every vertex. The builder keeps only primitive arrays.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class CompactGraphBuilder {
+
+    /** Number of vertexes */
+    private final int n;
+
+    /** Number of arc pairs */
+    private int pairs;
+
+    /** Tail of the forward arc of each pair */
+    private int[] from;
+
+    /** Head of the forward arc of each pair */
+    private int[] to;
+
+    /** Capacity of the forward arc of each pair */
+    private float[] forward;
+
+    /** Capacity of the backward arc of each pair */
+    private float[] backward;
+
+    /**
+     * Creates a builder for a graph with n vertexes
+     *
+     * @param n number of vertexes
+     */
+    public CompactGraphBuilder(int n) {
+        this(n, 16);
+    }
+
+    /**
+     * Creates a builder for a graph with n vertexes
+     *
+     * @param n number of vertexes
+     * @param expectedPairs expected number of arc pairs
+     */
+    public CompactGraphBuilder(int n, int expectedPairs) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of vertices must be nonnegative");
+        }
+        int c = Math.max(1, expectedPairs);
+        this.n = n;
+        this.from = new int[c];
+        this.to = new int[c];
+        this.forward = new float[c];
+        this.backward = new float[c];
+    }
+
+    /**
+     * Adds the arc u -> v with the given capacity and its reverse arc
+     * v -> u with the reverse capacity.
+     *
+     * @param u tail vertex
+     * @param v head vertex
+     * @param capacity capacity of u -> v
+     * @param reverseCapacity capacity of v -> u
+     * @return the index of the pair
+     */
+    public int addEdge(int u, int v, float capacity, float reverseCapacity) {
+        if (u < 0 || u >= n || v < 0 || v >= n) {
+            throw new IllegalArgumentException("Vertex out of range: " + u + " -> " + v);
+        }
+        if (pairs == from.length) {
+            int c = pairs * 2;
+            from = Arrays.copyOf(from, c);
+            to = Arrays.copyOf(to, c);
+            forward = Arrays.copyOf(forward, c);
+            backward = Arrays.copyOf(backward, c);
+        }
+        from[pairs] = u;
+        to[pairs] = v;
+        forward[pairs] = capacity;
+        backward[pairs] = reverseCapacity;
+        return pairs++;
+    }
+
+    /**
+     * Builds the CSR graph.
+     *
+     * @return the new graph
+     */
+    public CompactGraph build() {
+        return build(null);
+    }
+
+    private CompactGraph build(int[] names) {
+        int m = 2 * pairs;
+        int[] offsets = new int[n + 1];
+        for (int p = 0; p < pairs; p++) {
+            offsets[from[p] + 1]++;
+            offsets[to[p] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+
+        int[] next = Arrays.copyOf(offsets, n);
+        int[] targets = new int[m];
+        float[] capacities = new float[m];
+        int[] reverse = new int[m];
+        for (int p = 0; p < pairs; p++) {
+            int a = next[from[p]]++;
+            int b = next[to[p]]++;
+            targets[a] = to[p];
+            capacities[a] = forward[p];
+            targets[b] = from[p];
+            capacities[b] = backward[p];
+            reverse[a] = b;
+            reverse[b] = a;
+        }
+        return new CompactGraph(offsets, targets, capacities, reverse, names);
+    }
+
+    /**
+     * Converts a <code>Graph</code> into a CSR graph. Vertexes are renumbered
+     * by ascending name, use {@link CompactGraph#indexOf(int)} to find the
+     * index of a vertex. An edge and its opposite edge share one arc pair.
+     *
+     * @param graph the graph
+     * @return the new CSR graph
+     */
+    public static CompactGraph fromGraph(Graph graph) {
+        Set<Vertex> V = graph.getVertexes();
+        int[] names = new int[V.size()];
+        int i = 0;
+        for (Vertex v : V) {
+            names[i++] = v.name();
+        }
+        Arrays.sort(names);
+
+        CompactGraphBuilder builder = new CompactGraphBuilder(names.length, names.length * 4);
+        HashMap<Long, Integer> added = new HashMap<Long, Integer>();
+        long n = names.length;
+        for (Vertex v : V) {
+            int u = Arrays.binarySearch(names, v.name());
+            ArrayList<Edge> edges = graph.getEdges2(v);
+            for (Edge edge : edges) {
+                int w = Arrays.binarySearch(names, edge.getTarget().name());
+                if (w < 0) {
+                    throw new IllegalArgumentException("Given node in the edge isn't present in the graph");
+                }
+                Integer pair = added.remove(w * n + u);
+                if (pair != null) {
+                    builder.backward[pair] += edge.getWeight();
+                }
+                else {
+                    added.put(u * n + w, builder.addEdge(u, w, edge.getWeight(), 0));
+                }
+            }
+        }
+        return builder.build(names);
+    }
+}
@@ -0,0 +1,307 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * Dinic's max-flow / min-cut algorithm on a {@link CompactGraph}. Each phase
+ * labels the vertexes with their breadth-first distance from the source in
+ * the residual graph, and then saturates the level graph with a blocking
+ * flow found by depth-first search, where every vertex keeps a current arc
+ * so no arc is scanned twice in a phase. There are at most n phases, so the
+ * running time doesn't depend on the capacities.
+ *
+ * In the Edmonds-Karp mode every phase augments only the shortest path found
+ * by the breadth-first search.
+ *
+ * A <code>Graph</code> can also be given; it is converted to a
+ * <code>CompactGraph</code> and left unchanged.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class Dinic implements MaxFlow {
+
+    /** How the augmenting paths are found */
+    public enum Mode {
+
+        /** Blocking flows on the level graph */
+        DINIC,
+        /** One shortest augmenting path per breadth-first search */
+        EDMONDS_KARP
+    }
+
+    /** The given graph to apply this algorithm */
+    private final CompactGraph graph;
+
+    /** The original graph, if it was given */
+    private final Graph objectGraph;
+
+    /** the source vertex for the algorithm */
+    private final int source;
+
+    /** the sink vertex for the algorithm */
+    private final int sink;
+
+    /** Number of vertexes */
+    private final int n;
+
+    /** CSR arrays of the graph */
+    private final int[] offsets;
+
+    private final int[] targets;
+
+    private final int[] reverse;
+
+    private final float[] cap;
+
+    /** Distance of each vertex from the source, -1 if not reached */
+    private final int[] level;
+
+    /** Current arc of each vertex */
+    private final int[] current;
+
+    /** Arcs of the path being built, also the arc to the parent in the BFS */
+    private final int[] path;
+
+    /** BFS queue */
+    private final IntQueue queue;
+
+    private Mode mode = Mode.DINIC;
+
+    /** Value of the max flow */
+    private double flow;
+
+    /** True once the max flow was found */
+    private boolean solved;
+
+    /**
+     * Prepares the solver
+     *
+     * @param graph the graph, its capacities are modified
+     * @param source the source vertex index
+     * @param sink the sink vertex index
+     */
+    public Dinic(CompactGraph graph, int source, int sink) {
+        this(graph, null, source, sink);
+    }
+
+    /**
+     * Prepares the solver on a copy of the given graph
+     *
+     * @param graph the directed weighted graph, it isn't modified
+     * @param source vertex with no predecessor
+     * @param target one vertex with no successor
+     */
+    public Dinic(Graph graph, Vertex source, Vertex target) {
+        this(CompactGraphBuilder.fromGraph(graph), graph, source.name(), target.name());
+    }
+
+    private Dinic(CompactGraph graph, Graph objectGraph, int source, int sink) {
+        if (objectGraph != null) {
+            source = graph.indexOf(source);
+            sink = graph.indexOf(sink);
+            if (source < 0 || sink < 0) {
+                throw new IllegalArgumentException("Source or sink isn't present in the graph");
+            }
+        }
+        if (source == sink) {
+            throw new IllegalArgumentException("Source and sink must be different");
+        }
+        this.graph = graph;
+        this.objectGraph = objectGraph;
+        this.source = source;
+        this.sink = sink;
+        this.n = graph.size();
+        this.offsets = graph.offsets;
+        this.targets = graph.targets;
+        this.reverse = graph.reverse;
+        this.cap = graph.capacities;
+        this.level = new int[n];
+        this.current = new int[n];
+        this.path = new int[n];
+        this.queue = new IntQueue(n);
+    }
+
+    /**
+     * Augments flow until the sink can't be reached from the source.
+     *
+     * @return the value of the maximum flow
+     */
+    @Override
+    public double maxFlow() {
+        if (solved) {
+            return flow;
+        }
+        while (bfs()) {
+            if (mode == Mode.DINIC) {
+                blockingFlow();
+            }
+            else {
+                augmentShortestPath();
+            }
+        }
+        solved = true;
+        return flow;
+    }
+
+    /**
+     * Labels the vertexes with their distance from the source over the arcs
+     * with residual capacity, recording the BFS tree in <code>path</code>.
+     *
+     * @return true if the sink was reached
+     */
+    private boolean bfs() {
+        for (int v = 0; v < n; v++) {
+            level[v] = -1;
+        }
+        queue.clear();
+        level[source] = 0;
+        queue.add(source);
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            int h = level[v] + 1;
+            for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+                int w = targets[a];
+                if (level[w] < 0 && cap[a] > 0) {
+                    level[w] = h;
+                    path[w] = a;
+                    if (w == sink && mode == Mode.EDMONDS_KARP) {
+                        return true;
+                    }
+                    queue.add(w);
+                }
+            }
+        }
+        return level[sink] >= 0;
+    }
+
+    /**
+     * Augments the path of the BFS tree from the source to the sink.
+     */
+    private void augmentShortestPath() {
+        float delta = Float.MAX_VALUE;
+        for (int v = sink; v != source; v = targets[reverse[path[v]]]) {
+            delta = Math.min(delta, cap[path[v]]);
+        }
+        for (int v = sink; v != source; v = targets[reverse[path[v]]]) {
+            int a = path[v];
+            cap[a] -= delta;
+            cap[reverse[a]] += delta;
+        }
+        flow += delta;
+    }
+
+    /**
+     * Saturates the level graph by depth-first search from the source,
+     * advancing the current arc of a vertex past every arc that leads to a
+     * dead end or gets saturated.
+     */
+    private void blockingFlow() {
+        for (int v = 0; v < n; v++) {
+            current[v] = offsets[v];
+        }
+        int top = 0;
+        int v = source;
+        while (true) {
+            if (v == sink) {
+                // augment the path and restart from the tail of its first saturated arc
+                float delta = Float.MAX_VALUE;
+                for (int i = 0; i < top; i++) {
+                    delta = Math.min(delta, cap[path[i]]);
+                }
+                int cut = top;
+                for (int i = 0; i < top; i++) {
+                    int a = path[i];
+                    cap[a] -= delta;
+                    cap[reverse[a]] += delta;
+                    if (cap[a] <= 0 && i < cut) {
+                        cut = i;
+                    }
+                }
+                flow += delta;
+                top = cut;
+                v = targets[reverse[path[cut]]];
+                continue;
+            }
+
+            // advance
+            int end = offsets[v + 1];
+            int h = level[v] + 1;
+            int a = current[v];
+            while (a < end && (cap[a] <= 0 || level[targets[a]] != h)) {
+                a++;
+            }
+            current[v] = a;
+            if (a < end) {
+                path[top++] = a;
+                v = targets[a];
+                continue;
+            }
+
+            // retreat, v is a dead end
+            level[v] = -1;
+            if (v == source) {
+                return;
+            }
+            int last = path[--top];
+            v = targets[reverse[last]];
+            current[v]++;
+        }
+    }
+
+    @Override
+    public boolean isSourceSide(int v) {
+        maxFlow();
+        return level[v] >= 0;
+    }
+
+    /**
+     * The last breadth-first search labels the vertexes reachable from the
+     * source.
+     */
+    @Override
+    public BitSet sourceSide() {
+        maxFlow();
+        BitSet cut = new BitSet(n);
+        for (int v = 0; v < n; v++) {
+            if (level[v] >= 0) {
+                cut.set(v);
+            }
+        }
+        return cut;
+    }
+
+    /**
+     * Gives the source side of the min cut as vertexes of the original
+     * <code>Graph</code>.
+     *
+     * @return the vertexes in the source side of the min cut
+     */
+    public ArrayList<Vertex> minCut() {
+        if (objectGraph == null) {
+            throw new IllegalStateException("The solver wasn't created from a Graph");
+        }
+        maxFlow();
+        ArrayList<Vertex> vertexes = new ArrayList<Vertex>();
+        for (int v = 0; v < n; v++) {
+            if (level[v] >= 0) {
+                vertexes.add(objectGraph.getVertex(graph.name(v)));
+            }
+        }
+        return vertexes;
+    }
+
+    /**
+     * @param mode how the augmenting paths are found
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * @return the graph
+     */
+    public CompactGraph getGraph() {
+        return graph;
+    }
+}
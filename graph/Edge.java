@@ -21,6 +21,12 @@ public class Edge {
      */
     private float weight;
 
+    /**
+     * The sister arc of this edge, going from the target to the source, used
+     * to update the residual graph in constant time
+     */
+    private Edge reverse;
+
     /**
      * Basic constructor
      */
@@ -141,5 +147,24 @@ public class Edge {
      */
     public void setWeight(float weight) {        
         this.weight = weight;
-    }   
+    }
+
+    /**
+     * @return the sister arc of this edge, or null if the edge isn't paired
+     */
+    public Edge getReverse() {
+        return reverse;
+    }
+
+    /**
+     * Pairs this edge with its sister arc, in both directions.
+     *
+     * @param reverse the edge from the target to the source of this edge
+     */
+    public void setReverse(Edge reverse) {
+        this.reverse = reverse;
+        if (reverse != null) {
+            reverse.reverse = this;
+        }
+    }
 }
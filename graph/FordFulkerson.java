@@ -12,6 +12,9 @@ import java.util.logging.Logger;
  * called the source and exactly one vertex with no successor called the sink or
  * target.
  *
+ * The paths are found by depth-first search, so the running time depends on
+ * the capacities; {@link Dinic} finds shortest paths in polynomial time.
+ *
  * @author <a ref ="zianfanti@gmail.com"> Zian Fanti Gutierrez<a/>
  */
 public class FordFulkerson {
@@ -44,6 +47,9 @@ public class FordFulkerson {
         this.graph = graph;
         this.source = source;
         this.target = target;
+
+        // pair every edge with its sister arc for the residual updates
+        graph.pairEdges();
     }
 
     /**
@@ -74,13 +80,8 @@ public class FordFulkerson {
                 Edge edge = path[i];
                 edge.setWeight(edge.getWeight() - weight);
 
-                Edge residualEdge = graph.getEdge(edge.getTarget(), edge.getSource());
-                if (residualEdge == null) {
-                    graph.addEdge(new Edge(edge.getTarget(), edge.getSource(), weight));
-                }
-                else {
-                    residualEdge.setWeight(residualEdge.getWeight() + weight);
-                }
+                Edge residualEdge = edge.getReverse();
+                residualEdge.setWeight(residualEdge.getWeight() + weight);
             }
 
 
@@ -112,7 +113,9 @@ public class FordFulkerson {
      * target vertexes as a sequence.
      */
     private Edge[] findPath(Vertex source, Vertex target) {
-        Graph tree = new Graph();
+        // the tree is only walked through its edges, it needs no table of
+        // vertexes by name
+        Graph tree = new Graph(false);
 
         boolean pathFound = false;
         Stack<Vertex> S = new Stack<Vertex>();
@@ -1,6 +1,7 @@
 package graph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Set;
@@ -18,11 +19,31 @@ public class Graph {
      */
     private HashMap<Vertex, ArrayList<Edge>> graph;
 
+    /**
+     * The vertexes of this graph indexed by name, for the names greater or
+     * equal than zero
+     */
+    private Vertex[] table;
+
     /**
      * Default constructor
      */
     public Graph() {
         this.graph = new HashMap<Vertex, ArrayList<Edge>>();
+        this.table = new Vertex[16];
+    }
+
+    /**
+     * Creates a graph with or without the table of vertexes by name. The
+     * table grows up to the largest name added, so the small temporary graphs
+     * built while solving a large graph are created without it, and its
+     * vertexes are looked up by name with a linear search.
+     *
+     * @param indexed true to keep the table of vertexes by name
+     */
+    Graph(boolean indexed) {
+        this.graph = new HashMap<Vertex, ArrayList<Edge>>();
+        this.table = indexed ? new Vertex[16] : null;
     }
 
     /**
@@ -35,6 +56,7 @@ public class Graph {
             throw new IllegalArgumentException("Number of vertices must be nonnegative");
         }
         this.graph = new HashMap<Vertex, ArrayList<Edge>>(numOfVertexex);
+        this.table = new Vertex[Math.max(16, numOfVertexex)];
     }
 
     /**
@@ -46,11 +68,13 @@ public class Graph {
      */
     public Graph(Vertex[] vertexes, Edge[] edges) {
         this.graph = new HashMap<Vertex, ArrayList<Edge>>(vertexes.length);
+        this.table = new Vertex[Math.max(16, vertexes.length)];
 
         // add vertexes
         for (int i = 0; i < vertexes.length; i++) {
             ArrayList<Edge> vertexEdges = new ArrayList<Edge>();
             graph.put(vertexes[i], vertexEdges);
+            index(vertexes[i]);
         }
 
         // add given edges
@@ -77,6 +101,7 @@ public class Graph {
      */
     public void addConnectedVertex(Vertex vertex, ArrayList<Edge> edges) {
         graph.put(vertex, edges);
+        index(vertex);
     }
 
     /**
@@ -85,6 +110,21 @@ public class Graph {
     public void addVertex(Vertex vertex) {
         ArrayList<Edge> edges = new ArrayList<Edge>();
         graph.put(vertex, edges);
+        index(vertex);
+    }
+
+    /**
+     * Puts the vertex in the table of vertexes by name, if the graph has it
+     */
+    private void index(Vertex vertex) {
+        int name = vertex.name();
+        if (name < 0 || table == null) {
+            return;
+        }
+        if (name >= table.length) {
+            table = Arrays.copyOf(table, Math.max(name + 1, 2 * table.length));
+        }
+        table[name] = vertex;
     }
 
     /**
@@ -126,7 +166,10 @@ public class Graph {
      * @return the <code>Vertex</code> contained in the graph with the given name, 
      * or null if the desired vertex not exist.
      */
-    public Vertex getVertex(int name) {        
+    public Vertex getVertex(int name) {
+        if (name >= 0 && table != null) {
+            return (name < table.length) ? table[name] : null;
+        }
         Set<Vertex> V = graph.keySet();
         for (Vertex v : V) {
             if (v.name() == name) {
@@ -200,6 +243,43 @@ public class Graph {
         return null;
     }
 
+    /**
+     * Pairs every edge of this graph with its sister arc, going in the
+     * opposite direction. When the opposite edge doesn't exist it is added
+     * with zero weight, so the residual graph of a max-flow algorithm is
+     * complete and every residual update is done in constant time through
+     * {@link Edge#getReverse()}. Edges already paired are skipped.
+     */
+    public void pairEdges() {
+        HashMap<Edge, Edge> unpaired = new HashMap<Edge, Edge>();
+        for (ArrayList<Edge> edges : graph.values()) {
+            for (Edge e : edges) {
+                if (e.getReverse() == null) {
+                    unpaired.put(e, e);
+                }
+            }
+        }
+
+        Edge key = new Edge();
+        for (Edge e : new ArrayList<Edge>(unpaired.keySet())) {
+            if (e.getReverse() != null) {
+                continue;
+            }
+            key.setSource(e.getTarget());
+            key.setTarget(e.getSource());
+            Edge r = unpaired.get(key);
+            if (r == null) {
+                r = new Edge(e.getTarget(), e.getSource(), 0);
+                ArrayList<Edge> edges = graph.get(e.getTarget());
+                if (edges == null) {
+                    throw new IllegalArgumentException("Given node in the edge isn't present in the graph");
+                }
+                edges.add(r);
+            }
+            e.setReverse(r);
+        }
+    }
+
     /**
      * Gets the number of vertexes
      *
@@ -281,7 +361,7 @@ public class Graph {
      */
     public Vertex[] pathDFS(Vertex source, Vertex target) {
         if (graph.containsKey(source) && graph.containsKey(target)) {
-            Graph tree = new Graph();
+            Graph tree = new Graph(false);
 
             Stack<Vertex> S = new Stack<Vertex>();
             S.push(source);
@@ -0,0 +1,734 @@
+package graph;
+
+import java.util.BitSet;
+
+/**
+ * The Boykov-Kolmogorov max-flow / min-cut algorithm specialized to a
+ * {@link GridGraph}, with any {@link Neighbourhood}: 4 or 8-connected images,
+ * 6 or 26-connected volumes, or a custom stencil. The neighbours of a pixel
+ * are found by index arithmetic from the stencil, the parent of each pixel
+ * in the search trees is stored as the direction to it, and the reverse of
+ * the arc (p, d) is the arc from the neighbour in the opposite direction, so
+ * no adjacency list is ever read. The t-links are
+ * folded into one signed terminal capacity per pixel, positive towards the
+ * source and negative towards the sink. The n-link capacities of the graph are
+ * updated in place.
+ *
+ * Like {@link CompactBoykovKolmogorov} the solver is dynamic: the t-links and
+ * n-links can be changed after the max flow is found with
+ * {@link #addTerminalCapacities(int, float, float)} and
+ * {@link #addEdgeCapacity(int, int, float)}, and the next call to
+ * {@link #maxFlow()} reuses the flow and the search trees, so a new frame
+ * of a video or a new set of user seeds is segmented touching only the
+ * pixels that changed.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ *
+ * @Article{Boykov and Kolmogorov 2004, author = "Yuri Boykov and Vladimir
+ * Kolmogorov", title = "An Experimental Comparison of Min-Cut/Max-Flow
+ * Algorithms for Energy Minimization in Vision", journal = "<i>IEEE
+ * TRANSACTIONS ON PATTERN ANALYSIS AND MACHINE INTELLIGENCE</i>", year =
+ * "2004", pages = "1124-1137"}
+ */
+public class GridBoykovKolmogorov implements MaxFlow {
+
+    /** Not belonging to any tree */
+    private static final byte FREE = 0;
+
+    /** S-tree */
+    private static final byte S = 1;
+
+    /** T-tree */
+    private static final byte T = 2;
+
+    /** Parent of the pixels linked to a terminal */
+    private static final byte TERMINAL = Neighbourhood.MAX_DIRECTIONS;
+
+    /** Parent of the orphan pixels */
+    private static final byte ORPHAN = Neighbourhood.MAX_DIRECTIONS + 1;
+
+    /** Parent of the free pixels */
+    private static final byte NONE = Neighbourhood.MAX_DIRECTIONS + 2;
+
+    /** Distance of the pixels with no valid origin */
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    /** The given graph to apply this algorithm */
+    private final GridGraph graph;
+
+    private final int width;
+
+    private final int height;
+
+    private final int depth;
+
+    /** Number of directions */
+    private final int directions;
+
+    /** Index displacement of each direction */
+    private final int[] offset;
+
+    /** Displacements of each direction */
+    private final int[] dx;
+
+    private final int[] dy;
+
+    private final int[] dz;
+
+    /** Direction opposite to each direction */
+    private final int[] opposite;
+
+    /** First pixel of the region solved */
+    private final int lo;
+
+    /** End of the region solved */
+    private final int hi;
+
+    /** n-link capacities, one array per direction */
+    private final float[][] cap;
+
+    /** Residual terminal capacity of each pixel, > 0 from the source, < 0 to the sink */
+    private final float[] trCap;
+
+    /** Tree of each pixel */
+    private final byte[] tree;
+
+    /** Direction from each pixel to its parent, or TERMINAL, ORPHAN or NONE */
+    private final byte[] parent;
+
+    /** Active pixels */
+    private final IntQueue active;
+
+    /** Flags of the pixels in the active queue */
+    private final boolean[] inActive;
+
+    /** Orphan pixels */
+    private final IntQueue orphans;
+
+    /** Time of the last origin check of each pixel */
+    private final int[] ts;
+
+    /** Distance of each pixel to its terminal, valid when ts is the current time */
+    private final int[] dist;
+
+    /** Current time, incremented on every augmentation */
+    private int time;
+
+    /** Current flow */
+    private double flow;
+
+    /** True once the max flow was found */
+    private boolean solved;
+
+    /**
+     * Prepares the solver, folding the t-links of the graph into the terminal
+     * capacities and initializing the search trees.
+     *
+     * @param graph the grid graph, its n-link capacities are modified
+     */
+    public GridBoykovKolmogorov(GridGraph graph) {
+        this(graph, true);
+    }
+
+    /**
+     * Prepares the solver of the whole graph, leaving the active set empty
+     * if activate is false.
+     */
+    GridBoykovKolmogorov(GridGraph graph, boolean activate) {
+        int n = graph.size();
+        this.graph = graph;
+        this.width = graph.getWidth();
+        this.height = graph.getHeight();
+        this.depth = graph.getDepth();
+        Neighbourhood neighbourhood = graph.getNeighbourhood();
+        this.directions = neighbourhood.size();
+        this.offset = new int[directions];
+        this.dx = new int[directions];
+        this.dy = new int[directions];
+        this.dz = new int[directions];
+        this.opposite = new int[directions];
+        for (int d = 0; d < directions; d++) {
+            dx[d] = neighbourhood.dx(d);
+            dy[d] = neighbourhood.dy(d);
+            dz[d] = neighbourhood.dz(d);
+            opposite[d] = neighbourhood.opposite(d);
+            offset[d] = (dz[d] * height + dy[d]) * width + dx[d];
+        }
+        this.cap = graph.capacities;
+        this.trCap = new float[n];
+        this.tree = new byte[n];
+        this.parent = new byte[n];
+        this.active = new IntQueue(n);
+        this.inActive = new boolean[n];
+        this.orphans = new IntQueue(n);
+        this.ts = new int[n];
+        this.dist = new int[n];
+        this.lo = 0;
+        this.hi = n;
+
+        for (int p = 0; p < n; p++) {
+            float cs = graph.source[p];
+            float ct = graph.sink[p];
+            flow += Math.min(cs, ct);
+            trCap[p] = cs - ct;
+            if (trCap[p] > 0) {
+                tree[p] = S;
+                parent[p] = TERMINAL;
+                dist[p] = 1;
+            }
+            else if (trCap[p] < 0) {
+                tree[p] = T;
+                parent[p] = TERMINAL;
+                dist[p] = 1;
+            }
+            else {
+                parent[p] = NONE;
+            }
+        }
+        if (activate) {
+            activateRange(0, n);
+        }
+    }
+
+    /**
+     * Prepares a solver of the pixels lo..hi-1 alone, ignoring the n-links
+     * leaving the region. It shares the residual graph and the search trees
+     * of the whole solver, so solvers of disjoint regions can run at the same
+     * time. Its active set is empty.
+     *
+     * @param whole the solver of the whole graph
+     * @param lo first pixel of the region
+     * @param hi end of the region
+     */
+    GridBoykovKolmogorov(GridBoykovKolmogorov whole, int lo, int hi) {
+        this.graph = whole.graph;
+        this.width = whole.width;
+        this.height = whole.height;
+        this.depth = whole.depth;
+        this.directions = whole.directions;
+        this.offset = whole.offset;
+        this.dx = whole.dx;
+        this.dy = whole.dy;
+        this.dz = whole.dz;
+        this.opposite = whole.opposite;
+        this.cap = whole.cap;
+        this.trCap = whole.trCap;
+        this.tree = whole.tree;
+        this.parent = whole.parent;
+        this.inActive = whole.inActive;
+        this.ts = whole.ts;
+        this.dist = whole.dist;
+        this.active = new IntQueue(hi - lo);
+        this.orphans = new IntQueue(hi - lo);
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    /**
+     * @return the first pixel of the region solved
+     */
+    int lo() {
+        return lo;
+    }
+
+    /**
+     * @return the end of the region solved
+     */
+    int hi() {
+        return hi;
+    }
+
+    /**
+     * Activates the pixels from..to-1 that are in a search tree
+     */
+    void activateRange(int from, int to) {
+        for (int p = from; p < to; p++) {
+            if (tree[p] != FREE) {
+                activate(p);
+            }
+        }
+    }
+
+    /**
+     * Joins the solved regions a and b, which must be adjacent and cover the
+     * region of this solver. Their flow and search trees are kept, and only
+     * the pixels with an n-link crossing from one region to the other become
+     * active.
+     */
+    void merge(GridBoykovKolmogorov a, GridBoykovKolmogorov b) {
+        if (a.lo != lo || a.hi != b.lo || b.hi != hi) {
+            throw new IllegalArgumentException("The regions don't cover the solver region");
+        }
+        // the distances of both trees are only valid in their own region
+        time = Math.max(time, Math.max(a.time, b.time)) + 1;
+        flow += a.flow + b.flow;
+        solved = false;
+        int span = 0;
+        for (int d = 0; d < directions; d++) {
+            span = Math.max(span, Math.abs(offset[d]));
+        }
+        activateRange(Math.max(lo, a.hi - span), Math.min(hi, a.hi + span));
+    }
+
+    /**
+     * Grows the search trees, augmenting every path found, until no active
+     * pixel is left.
+     *
+     * @return the value of the maximum flow
+     */
+    @Override
+    public double maxFlow() {
+        if (solved) {
+            return flow;
+        }
+        if (!orphans.isEmpty()) {
+            // orphans left by capacity changes
+            time++;
+            adopt();
+        }
+        int current = -1;
+        while (true) {
+            int p = current;
+            current = -1;
+            if (p < 0 || tree[p] == FREE) {
+                p = nextActive();
+                if (p < 0) {
+                    break;
+                }
+            }
+
+            // grow
+            int x = p % width;
+            int y = p / width % height;
+            int z = p / width / height;
+            int sNode = -1;
+            int tNode = -1;
+            int middle = -1;
+            for (int d = 0; d < directions; d++) {
+                int q = neighbour(x, y, z, p, d);
+                if (q < 0) {
+                    continue;
+                }
+                int od = opposite[d];
+                if (tree[p] == S) {
+                    if (cap[d][p] > 0) {
+                        if (tree[q] == FREE) {
+                            tree[q] = S;
+                            parent[q] = (byte) od;
+                            ts[q] = ts[p];
+                            dist[q] = dist[p] + 1;
+                            activate(q);
+                        }
+                        else if (tree[q] == T) {
+                            sNode = p;
+                            tNode = q;
+                            middle = d;
+                            break;
+                        }
+                        else if (ts[q] <= ts[p] && dist[q] > dist[p]) {
+                            // p is a closer parent for q
+                            parent[q] = (byte) od;
+                            ts[q] = ts[p];
+                            dist[q] = dist[p] + 1;
+                        }
+                    }
+                }
+                else if (cap[od][q] > 0) {
+                    if (tree[q] == FREE) {
+                        tree[q] = T;
+                        parent[q] = (byte) od;
+                        ts[q] = ts[p];
+                        dist[q] = dist[p] + 1;
+                        activate(q);
+                    }
+                    else if (tree[q] == S) {
+                        sNode = q;
+                        tNode = p;
+                        middle = od;
+                        break;
+                    }
+                    else if (ts[q] <= ts[p] && dist[q] > dist[p]) {
+                        // p is a closer parent for q
+                        parent[q] = (byte) od;
+                        ts[q] = ts[p];
+                        dist[q] = dist[p] + 1;
+                    }
+                }
+            }
+
+            if (middle >= 0) {
+                // p may have more paths, process it again
+                current = p;
+                augment(sNode, tNode, middle);
+                time++;
+                adopt();
+            }
+        }
+        solved = true;
+        return flow;
+    }
+
+    /**
+     * Pushes the bottleneck capacity through the path source -> sNode ->
+     * tNode -> sink, where tNode is the neighbour of sNode in the direction
+     * middle. The pixels whose parent arc gets saturated become orphans.
+     */
+    private void augment(int sNode, int tNode, int middle) {
+        // find the bottleneck capacity
+        float delta = cap[middle][sNode];
+        int p = sNode;
+        while (parent[p] != TERMINAL) {
+            int d = parent[p];
+            int q = p + offset[d];
+            delta = Math.min(delta, cap[opposite[d]][q]);
+            p = q;
+        }
+        delta = Math.min(delta, trCap[p]);
+
+        p = tNode;
+        while (parent[p] != TERMINAL) {
+            int d = parent[p];
+            delta = Math.min(delta, cap[d][p]);
+            p += offset[d];
+        }
+        delta = Math.min(delta, -trCap[p]);
+
+        // update the residual graph
+        cap[middle][sNode] -= delta;
+        cap[opposite[middle]][tNode] += delta;
+
+        p = sNode;
+        while (parent[p] != TERMINAL) {
+            int d = parent[p];
+            int od = opposite[d];
+            int q = p + offset[d];
+            cap[d][p] += delta;
+            cap[od][q] -= delta;
+            if (cap[od][q] <= 0) {
+                makeOrphan(p);
+            }
+            p = q;
+        }
+        trCap[p] -= delta;
+        if (trCap[p] <= 0) {
+            makeOrphan(p);
+        }
+
+        p = tNode;
+        while (parent[p] != TERMINAL) {
+            int d = parent[p];
+            int q = p + offset[d];
+            cap[d][p] -= delta;
+            cap[opposite[d]][q] += delta;
+            if (cap[d][p] <= 0) {
+                makeOrphan(p);
+            }
+            p = q;
+        }
+        trCap[p] += delta;
+        if (trCap[p] >= 0) {
+            makeOrphan(p);
+        }
+
+        flow += delta;
+    }
+
+    /**
+     * Every orphan tries to find a new valid parent within the same search
+     * tree; otherwise it becomes a free pixel and its children become
+     * orphans.
+     */
+    private void adopt() {
+        while (!orphans.isEmpty()) {
+            int p = orphans.poll();
+            byte t = tree[p];
+
+            byte best = NONE;
+            int minDist = INFINITE;
+            if ((t == S && trCap[p] > 0) || (t == T && trCap[p] < 0)) {
+                best = TERMINAL;
+                minDist = 0;
+            }
+            else {
+                // the valid parent closest to the terminal
+                int x = p % width;
+                int y = p / width % height;
+                int z = p / width / height;
+                for (int d = 0; d < directions; d++) {
+                    int q = neighbour(x, y, z, p, d);
+                    if (q >= 0 && tree[q] == t && residual(t, p, q, d) > 0) {
+                        int k = originDistance(q);
+                        if (k < minDist) {
+                            minDist = k;
+                            best = (byte) d;
+                        }
+                    }
+                }
+            }
+
+            if (best != NONE) {
+                parent[p] = best;
+                ts[p] = time;
+                dist[p] = minDist + 1;
+                continue;
+            }
+
+            // p becomes free
+            detach(p);
+            tree[p] = FREE;
+            parent[p] = NONE;
+        }
+    }
+
+    /**
+     * Residual capacity from q to p in the S-tree, or from p to q in the
+     * T-tree, q being the neighbour of p in the direction d.
+     */
+    private float residual(byte t, int p, int q, int d) {
+        return (t == S) ? cap[opposite[d]][q] : cap[d][p];
+    }
+
+    /**
+     * Finds the distance from a pixel to its terminal through its parents.
+     * The walk stops at the first pixel already checked since the last
+     * augmentation, and the pixels on the way are marked with their
+     * distance.
+     *
+     * @return the distance, or INFINITE if q has no valid path to its
+     * terminal
+     */
+    private int originDistance(int q) {
+        int d = 0;
+        int p = q;
+        while (true) {
+            if (ts[p] == time) {
+                d += dist[p];
+                break;
+            }
+            byte a = parent[p];
+            d++;
+            if (a == TERMINAL) {
+                ts[p] = time;
+                dist[p] = 1;
+                break;
+            }
+            if (a > TERMINAL) {
+                return INFINITE;
+            }
+            p += offset[a];
+        }
+
+        // mark the pixels of the path with their distance
+        int k = d;
+        for (p = q; ts[p] != time; p += offset[parent[p]]) {
+            ts[p] = time;
+            dist[p] = k--;
+        }
+        return d;
+    }
+
+    /**
+     * @return the neighbour of the pixel p = (x, y, z) in the direction d, or
+     * -1 if it is outside of the image or of the region solved
+     */
+    private int neighbour(int x, int y, int z, int p, int d) {
+        x += dx[d];
+        y += dy[d];
+        z += dz[d];
+        if (x < 0 || x >= width || y < 0 || y >= height || z < 0 || z >= depth) {
+            return -1;
+        }
+        int q = p + offset[d];
+        return (q >= lo && q < hi) ? q : -1;
+    }
+
+    private void makeOrphan(int p) {
+        parent[p] = ORPHAN;
+        orphans.add(p);
+    }
+
+    /**
+     * Prepares p to leave its tree: its children become orphans and the
+     * neighbours of the same tree that could grow into p become active.
+     */
+    private void detach(int p) {
+        byte t = tree[p];
+        int x = p % width;
+        int y = p / width % height;
+        int z = p / width / height;
+        for (int d = 0; d < directions; d++) {
+            int q = neighbour(x, y, z, p, d);
+            if (q >= 0 && tree[q] == t) {
+                if (residual(t, p, q, d) > 0) {
+                    activate(q);
+                }
+                if (parent[q] == opposite[d]) {
+                    makeOrphan(q);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the given amounts to the capacities of the t-links of the pixel p.
+     * The amounts can be negative as long as the resulting capacities
+     * aren't.
+     *
+     * @param p the pixel
+     * @param fromSource change of the capacity of the t-link from the source
+     * @param toSink change of the capacity of the t-link to the sink
+     */
+    public void addTerminalCapacities(int p, float fromSource, float toSink) {
+        float tc = trCap[p];
+        float cs = fromSource + (tc > 0 ? tc : 0);
+        float ct = toSink + (tc < 0 ? -tc : 0);
+        // the common part, negative if the change removed flow, is moved to the flow value
+        flow += Math.min(cs, ct);
+        trCap[p] = cs - ct;
+        solved = false;
+
+        tc = trCap[p];
+        byte t = (tc > 0) ? S : (tc < 0) ? T : FREE;
+        if (t != FREE) {
+            if (tree[p] != t) {
+                if (tree[p] != FREE) {
+                    detach(p);
+                }
+                tree[p] = t;
+            }
+            if (parent[p] != ORPHAN) {
+                // an orphan in the queue finds its terminal when adopted
+                parent[p] = TERMINAL;
+                ts[p] = time;
+                dist[p] = 1;
+            }
+            activate(p);
+        }
+        else if (parent[p] == TERMINAL) {
+            makeOrphan(p);
+        }
+    }
+
+    /**
+     * Adds the given amount to the capacity of the n-link from p to its
+     * neighbour in the direction d. If the n-link carries more flow than its
+     * new capacity, the excess is rerouted through the t-links of its ends.
+     *
+     * @param p the pixel
+     * @param d the direction of the n-link
+     * @param delta change of the capacity, the resulting capacity must be
+     * nonnegative
+     */
+    public void addEdgeCapacity(int p, int d, float delta) {
+        int q = neighbour(p % width, p / width % height, p / width / height, p, d);
+        if (q < 0) {
+            throw new IllegalArgumentException("No neighbour in the direction " + d);
+        }
+        int od = opposite[d];
+        cap[d][p] += delta;
+        solved = false;
+        if (cap[d][p] < 0) {
+            // cancel the excess flow of p -> q, sending it from p to the
+            // sink and from the source to q instead
+            float excess = -cap[d][p];
+            cap[d][p] = 0;
+            cap[od][q] -= excess;
+            flow -= excess;
+            addTerminalCapacities(p, excess, 0);
+            addTerminalCapacities(q, 0, excess);
+        }
+
+        checkParent(p);
+        checkParent(q);
+        if (tree[p] != FREE) {
+            activate(p);
+        }
+        if (tree[q] != FREE) {
+            activate(q);
+        }
+    }
+
+    /**
+     * Makes p an orphan if the n-link to its parent has no residual capacity
+     */
+    private void checkParent(int p) {
+        byte d = parent[p];
+        if (d < TERMINAL) {
+            float r = (tree[p] == S) ? cap[opposite[d]][p + offset[d]] : cap[d][p];
+            if (r <= 0) {
+                makeOrphan(p);
+            }
+        }
+    }
+
+    private void activate(int p) {
+        if (!inActive[p]) {
+            inActive[p] = true;
+            active.add(p);
+        }
+    }
+
+    /**
+     * @return the next active pixel still in a tree, or -1
+     */
+    private int nextActive() {
+        while (!active.isEmpty()) {
+            int p = active.poll();
+            inActive[p] = false;
+            if (tree[p] != FREE) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param p a pixel
+     * @return true if the pixel p is in the source side of the min cut
+     */
+    @Override
+    public boolean isSourceSide(int p) {
+        maxFlow();
+        return tree[p] == S;
+    }
+
+    /**
+     * @return the pixels in the source side of the min cut
+     */
+    @Override
+    public BitSet sourceSide() {
+        maxFlow();
+        BitSet cut = new BitSet(tree.length);
+        for (int p = 0; p < tree.length; p++) {
+            if (tree[p] == S) {
+                cut.set(p);
+            }
+        }
+        return cut;
+    }
+
+    /**
+     * Writes the min cut in a mask of the image, in one pass over the tree
+     * labels.
+     *
+     * @param mask a mask with one entry per pixel, it is overwritten
+     * @param value the value of the pixels in the source side, the others
+     * are set to zero
+     */
+    public void sourceSide(byte[] mask, byte value) {
+        if (mask.length < tree.length) {
+            throw new IllegalArgumentException("The mask must have " + tree.length + " entries");
+        }
+        maxFlow();
+        for (int p = 0; p < tree.length; p++) {
+            mask[p] = (tree[p] == S) ? value : 0;
+        }
+    }
+
+    /**
+     * @return the graph
+     */
+    public GridGraph getGraph() {
+        return graph;
+    }
+}
@@ -0,0 +1,225 @@
+package graph;
+
+/**
+ * A grid graph for image and volume cuts. The pixels of a width x height
+ * image, or the voxels of a width x height x depth volume, are the vertexes
+ * 0..width*height*depth-1, in row and then slice order, and the source and
+ * the sink are implicit. The neighbours of each pixel are given by a
+ * {@link Neighbourhood}, 4-connected by default. The graph keeps only flat
+ * <code>float</code> arrays: the t-link capacities from the source and to the
+ * sink of each pixel, and one array of n-link capacities per direction, where
+ * <code>capacity(p, d)</code> is the capacity of the arc from the pixel p to
+ * its neighbour in the direction d. The neighbours are implied by index
+ * arithmetic, so no <code>Vertex</code> or <code>Edge</code> is created, and
+ * a 6-connected volume takes 32 bytes per voxel.
+ *
+ * The n-link arrays are the residual graph: {@link GridBoykovKolmogorov}
+ * updates them in place.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class GridGraph {
+
+    /** Direction to the pixel (x + 1, y) */
+    public static final int RIGHT = 0;
+
+    /** Direction to the pixel (x, y + 1) */
+    public static final int DOWN = 1;
+
+    /** Direction to the pixel (x - 1, y) */
+    public static final int LEFT = 2;
+
+    /** Direction to the pixel (x, y - 1) */
+    public static final int UP = 3;
+
+    /** Direction to the voxel (x, y, z + 1) in the 3D neighbourhoods */
+    public static final int NEXT_SLICE = 4;
+
+    /** Direction to the voxel (x, y, z - 1) in the 3D neighbourhoods */
+    public static final int PREVIOUS_SLICE = 5;
+
+    /** Image width */
+    private final int width;
+
+    /** Image height */
+    private final int height;
+
+    /** Number of slices, 1 for images */
+    private final int depth;
+
+    /** Neighbours of each pixel */
+    private final Neighbourhood neighbourhood;
+
+    /** Capacity of the t-link from the source to each pixel */
+    final float[] source;
+
+    /** Capacity of the t-link from each pixel to the sink */
+    final float[] sink;
+
+    /** Capacity of the n-link from each pixel to its neighbour, one array per direction */
+    final float[][] capacities;
+
+    /**
+     * Creates a 4-connected grid graph with all the capacities set to zero
+     *
+     * @param width image width
+     * @param height image height
+     */
+    public GridGraph(int width, int height) {
+        this(width, height, 1, Neighbourhood.FOUR);
+    }
+
+    /**
+     * Creates a grid graph of an image with all the capacities set to zero
+     *
+     * @param width image width
+     * @param height image height
+     * @param neighbourhood neighbours of each pixel
+     */
+    public GridGraph(int width, int height, Neighbourhood neighbourhood) {
+        this(width, height, 1, neighbourhood);
+    }
+
+    /**
+     * Creates a grid graph of a volume with all the capacities set to zero
+     *
+     * @param width volume width
+     * @param height volume height
+     * @param depth number of slices
+     * @param neighbourhood neighbours of each voxel
+     */
+    public GridGraph(int width, int height, int depth, Neighbourhood neighbourhood) {
+        if (width <= 0 || height <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Width, height and depth must be positive");
+        }
+        long size = (long) width * height * depth;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many pixels: " + size);
+        }
+        int n = (int) size;
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.neighbourhood = neighbourhood;
+        this.source = new float[n];
+        this.sink = new float[n];
+        this.capacities = new float[neighbourhood.size()][n];
+    }
+
+    /**
+     * @return the image width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the image height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the number of slices, 1 for images
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the neighbours of each pixel
+     */
+    public Neighbourhood getNeighbourhood() {
+        return neighbourhood;
+    }
+
+    /**
+     * @return the number of pixels, without the terminals
+     */
+    public int size() {
+        return source.length;
+    }
+
+    /**
+     * @return the index of the voxel (x, y, z)
+     */
+    public int index(int x, int y, int z) {
+        return (z * height + y) * width + x;
+    }
+
+    /**
+     * @return the direction opposite to d
+     */
+    public int opposite(int d) {
+        return neighbourhood.opposite(d);
+    }
+
+    /**
+     * @param p a pixel
+     * @param d a direction
+     * @return the neighbour of p in the direction d, or -1 if it is outside
+     * of the image
+     */
+    public int neighbour(int p, int d) {
+        int x = p % width + neighbourhood.dx(d);
+        int y = p / width % height + neighbourhood.dy(d);
+        int z = p / width / height + neighbourhood.dz(d);
+        if (x < 0 || x >= width || y < 0 || y >= height || z < 0 || z >= depth) {
+            return -1;
+        }
+        return index(x, y, z);
+    }
+
+    /**
+     * Sets the t-link capacities of a pixel
+     *
+     * @param p the pixel
+     * @param fromSource capacity of the arc from the source to p
+     * @param toSink capacity of the arc from p to the sink
+     */
+    public void setTerminals(int p, float fromSource, float toSink) {
+        source[p] = fromSource;
+        sink[p] = toSink;
+    }
+
+    /**
+     * @return the capacity of the arc from the source to the pixel p
+     */
+    public float sourceCapacity(int p) {
+        return source[p];
+    }
+
+    /**
+     * @return the capacity of the arc from the pixel p to the sink
+     */
+    public float sinkCapacity(int p) {
+        return sink[p];
+    }
+
+    /**
+     * Sets the capacities of the n-link between the pixel p and its neighbour
+     * in the direction d.
+     *
+     * @param p the pixel
+     * @param d the direction
+     * @param capacity capacity of the arc from p to the neighbour
+     * @param reverseCapacity capacity of the arc from the neighbour to p
+     */
+    public void setEdge(int p, int d, float capacity, float reverseCapacity) {
+        int q = neighbour(p, d);
+        if (q < 0) {
+            throw new IllegalArgumentException("Pixel " + p + " has no neighbour in direction " + d);
+        }
+        capacities[d][p] = capacity;
+        capacities[opposite(d)][q] = reverseCapacity;
+    }
+
+    /**
+     * @return the residual capacity of the arc from the pixel p to its
+     * neighbour in the direction d
+     */
+    public float capacity(int p, int d) {
+        return capacities[d][p];
+    }
+}
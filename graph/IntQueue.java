@@ -0,0 +1,63 @@
+package graph;
+
+/**
+ * A FIFO queue of vertex indexes in a fixed circular buffer. The solvers keep
+ * each vertex at most once in a queue, so a capacity of the number of
+ * vertexes is enough and no allocation happens after construction.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+class IntQueue {
+
+    /** The circular buffer */
+    private final int[] buffer;
+
+    /** Position of the first element */
+    private int head;
+
+    /** Number of elements */
+    private int size;
+
+    /**
+     * @param capacity maximum number of elements
+     */
+    IntQueue(int capacity) {
+        this.buffer = new int[Math.max(1, capacity)];
+    }
+
+    void add(int v) {
+        if (size == buffer.length) {
+            throw new IllegalStateException("Queue is full");
+        }
+        int tail = head + size;
+        if (tail >= buffer.length) {
+            tail -= buffer.length;
+        }
+        buffer[tail] = v;
+        size++;
+    }
+
+    int poll() {
+        int v = buffer[head];
+        head = (head + 1 == buffer.length) ? 0 : head + 1;
+        size--;
+        return v;
+    }
+
+    int peek() {
+        return buffer[head];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,401 @@
+package graph;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link GridGraph} kept in a file, for cuts that don't fit in memory. The
+ * pixels are grouped in regions of whole slices, or whole rows for images,
+ * and each region is a contiguous block of the file with one record per
+ * pixel: the excess, the residual capacity to the sink, the label used by
+ * {@link RegionPushRelabel} and the n-link capacity of every direction.
+ * Before solving, the excess holds the capacity of the t-link from the
+ * source.
+ *
+ * Only a working set of the most recently used regions is kept in memory,
+ * in a fixed pool of direct buffers: a region is read from the file into a
+ * buffer when used, and written back when its buffer is taken by another
+ * region, so the memory used doesn't grow with the number of regions.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class MappedGridGraph implements Closeable {
+
+    /** Offsets of the fields in the record of a pixel */
+    static final int EXCESS = 0;
+
+    static final int SINK = 4;
+
+    static final int LABEL = 8;
+
+    static final int CAPACITIES = 12;
+
+    private final int width;
+
+    private final int height;
+
+    private final int depth;
+
+    private final Neighbourhood neighbourhood;
+
+    /** Number of pixels */
+    private final int size;
+
+    /** Pixels per region, the last one can be smaller */
+    private final int regionSize;
+
+    /** Number of regions */
+    private final int regions;
+
+    /** Bytes per pixel */
+    private final int recordSize;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    /** Regions in memory, in least recently used order */
+    private final LinkedHashMap<Integer, ByteBuffer> resident;
+
+    /** Size of the working set */
+    private int residentRegions = 3;
+
+    /** Number of times a region was read */
+    private long loads;
+
+    /** Number of region buffers allocated */
+    private int buffers;
+
+    /**
+     * Creates a graph of a volume with all the capacities set to zero
+     *
+     * @param width volume width
+     * @param height volume height
+     * @param depth number of slices, 1 for images
+     * @param neighbourhood neighbours of each voxel
+     * @param file the file to keep the graph, it is overwritten
+     * @param regionLength number of slices in a region, or of rows for images
+     * @throws IOException if the file can't be created
+     */
+    public MappedGridGraph(int width, int height, int depth, Neighbourhood neighbourhood,
+            File file, int regionLength) throws IOException {
+        if (width <= 0 || height <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Width, height and depth must be positive");
+        }
+        long n = (long) width * height * depth;
+        if (n > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many pixels: " + n);
+        }
+        int unit = (depth > 1) ? width * height : width;
+        int span = 0;
+        for (int d = 0; d < neighbourhood.size(); d++) {
+            span = Math.max(span, Math.abs((depth > 1) ? neighbourhood.dz(d) : neighbourhood.dy(d)));
+        }
+        if (regionLength <= 0 || regionLength < span) {
+            throw new IllegalArgumentException("A region must be at least " + Math.max(span, 1) + " long");
+        }
+        this.recordSize = CAPACITIES + 4 * neighbourhood.size();
+        if ((long) regionLength * unit * recordSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Regions can't be larger than 2 GB");
+        }
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.neighbourhood = neighbourhood;
+        this.size = (int) n;
+        this.regionSize = (int) Math.min(n, (long) regionLength * unit);
+        this.regions = (size + regionSize - 1) / regionSize;
+
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.file.setLength((long) size * recordSize);
+        this.channel = this.file.getChannel();
+        this.resident = new LinkedHashMap<Integer, ByteBuffer>(16, 0.75f, true);
+    }
+
+    /**
+     * Copies a graph held in memory
+     *
+     * @param graph the graph
+     * @param file the file to keep the graph, it is overwritten
+     * @param regionLength number of slices in a region, or of rows for images
+     * @return the new graph
+     * @throws IOException if the file can't be written
+     */
+    public static MappedGridGraph copyOf(GridGraph graph, File file, int regionLength) throws IOException {
+        Neighbourhood neighbourhood = graph.getNeighbourhood();
+        MappedGridGraph mapped = new MappedGridGraph(graph.getWidth(), graph.getHeight(),
+                graph.getDepth(), neighbourhood, file, regionLength);
+        for (int p = 0; p < mapped.size; p++) {
+            ByteBuffer b = mapped.region(p / mapped.regionSize);
+            int i = (p % mapped.regionSize) * mapped.recordSize;
+            b.putFloat(i + EXCESS, graph.source[p]);
+            b.putFloat(i + SINK, graph.sink[p]);
+            for (int d = 0; d < neighbourhood.size(); d++) {
+                b.putFloat(i + CAPACITIES + 4 * d, graph.capacities[d][p]);
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * @return the image width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the image height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the number of slices, 1 for images
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the neighbours of each pixel
+     */
+    public Neighbourhood getNeighbourhood() {
+        return neighbourhood;
+    }
+
+    /**
+     * @return the number of pixels, without the terminals
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of regions
+     */
+    public int regions() {
+        return regions;
+    }
+
+    /**
+     * @return the number of pixels of a region, except maybe the last one
+     */
+    public int regionSize() {
+        return regionSize;
+    }
+
+    /**
+     * @return the bytes of the record of a pixel
+     */
+    int recordSize() {
+        return recordSize;
+    }
+
+    /**
+     * @param p a pixel
+     * @param d a direction
+     * @return the neighbour of p in the direction d, or -1 if it is outside
+     * of the image
+     */
+    public int neighbour(int p, int d) {
+        int x = p % width + neighbourhood.dx(d);
+        int y = p / width % height + neighbourhood.dy(d);
+        int z = p / width / height + neighbourhood.dz(d);
+        if (x < 0 || x >= width || y < 0 || y >= height || z < 0 || z >= depth) {
+            return -1;
+        }
+        return (z * height + y) * width + x;
+    }
+
+    /**
+     * Sets the t-link capacities of a pixel
+     *
+     * @param p the pixel
+     * @param fromSource capacity of the arc from the source to p
+     * @param toSink capacity of the arc from p to the sink
+     */
+    public void setTerminals(int p, float fromSource, float toSink) {
+        ByteBuffer b = region(p / regionSize);
+        int i = (p % regionSize) * recordSize;
+        b.putFloat(i + EXCESS, fromSource);
+        b.putFloat(i + SINK, toSink);
+    }
+
+    /**
+     * Sets the capacities of the n-link between the pixel p and its neighbour
+     * in the direction d.
+     *
+     * @param p the pixel
+     * @param d the direction
+     * @param capacity capacity of the arc from p to the neighbour
+     * @param reverseCapacity capacity of the arc from the neighbour to p
+     */
+    public void setEdge(int p, int d, float capacity, float reverseCapacity) {
+        int q = neighbour(p, d);
+        if (q < 0) {
+            throw new IllegalArgumentException("Pixel " + p + " has no neighbour in direction " + d);
+        }
+        setCapacity(p, d, capacity);
+        setCapacity(q, neighbourhood.opposite(d), reverseCapacity);
+    }
+
+    private void setCapacity(int p, int d, float capacity) {
+        region(p / regionSize).putFloat((p % regionSize) * recordSize + CAPACITIES + 4 * d, capacity);
+    }
+
+    /**
+     * @return the residual capacity of the arc from the pixel p to its
+     * neighbour in the direction d
+     */
+    public float capacity(int p, int d) {
+        return region(p / regionSize).getFloat((p % regionSize) * recordSize + CAPACITIES + 4 * d);
+    }
+
+    /**
+     * Gives the contents of a region, reading it if it isn't in the working
+     * set. The buffer of the least recently used region is reused, so the
+     * buffer returned stays valid until as many other regions as the size of
+     * the working set are asked for.
+     *
+     * @param r the region
+     * @return the records of the pixels of the region
+     */
+    ByteBuffer region(int r) {
+        ByteBuffer b = resident.get(r);
+        if (b == null) {
+            if (resident.size() < residentRegions) {
+                b = ByteBuffer.allocateDirect(regionSize * recordSize);
+                b.order(ByteOrder.nativeOrder());
+                buffers++;
+            }
+            else {
+                Iterator<Map.Entry<Integer, ByteBuffer>> eldest = resident.entrySet().iterator();
+                Map.Entry<Integer, ByteBuffer> e = eldest.next();
+                b = e.getValue();
+                write(e.getKey(), b);
+                eldest.remove();
+            }
+            read(r, b);
+            loads++;
+            resident.put(r, b);
+        }
+        return b;
+    }
+
+    /**
+     * Reads a region from the file, the limit of the buffer is set to the
+     * size of the region.
+     */
+    private void read(int r, ByteBuffer b) {
+        long start = (long) r * regionSize * recordSize;
+        b.clear();
+        b.limit(Math.min(regionSize, size - r * regionSize) * recordSize);
+        try {
+            while (b.hasRemaining()) {
+                if (channel.read(b, start + b.position()) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException("Can't read the region " + r, ex);
+        }
+        b.position(0);
+    }
+
+    /**
+     * Writes a region to the file
+     */
+    private void write(int r, ByteBuffer b) {
+        long start = (long) r * regionSize * recordSize;
+        b.position(0);
+        try {
+            while (b.hasRemaining()) {
+                channel.write(b, start + b.position());
+            }
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException("Can't write the region " + r, ex);
+        }
+        b.position(0);
+    }
+
+    /**
+     * @return true if the region r is in the working set
+     */
+    boolean isResident(int r) {
+        return resident.containsKey(r);
+    }
+
+    /**
+     * @param regions the number of regions kept in memory, at least 3
+     */
+    public void setResidentRegions(int regions) {
+        if (regions < 3) {
+            throw new IllegalArgumentException("At least 3 regions must be resident");
+        }
+        this.residentRegions = regions;
+        Iterator<Map.Entry<Integer, ByteBuffer>> eldest = resident.entrySet().iterator();
+        while (resident.size() > regions) {
+            Map.Entry<Integer, ByteBuffer> e = eldest.next();
+            write(e.getKey(), e.getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return the number of regions in memory, never more than the size of
+     * the working set
+     */
+    public int getResidentRegions() {
+        return resident.size();
+    }
+
+    /**
+     * @return the number of times a region was read
+     */
+    public long getRegionLoads() {
+        return loads;
+    }
+
+    /**
+     * The buffers are only allocated while the working set isn't full, and
+     * reused after it, so this is the most regions held in memory at any
+     * time, unless the working set was made smaller.
+     *
+     * @return the number of region buffers allocated
+     */
+    public int getRegionBuffers() {
+        return buffers;
+    }
+
+    /**
+     * Writes the regions in memory to the file
+     */
+    public void flush() {
+        for (Map.Entry<Integer, ByteBuffer> e : resident.entrySet()) {
+            write(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Writes the regions in memory and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        resident.clear();
+        file.close();
+    }
+}
@@ -0,0 +1,33 @@
+package graph;
+
+import java.util.BitSet;
+
+/**
+ * Common interface of the array based max-flow / min-cut solvers, so the
+ * engine can be chosen per workload. The min cut reported by every solver is
+ * the source side closest to the source: the vertexes reachable from the
+ * source in the final residual graph, which is the cut that
+ * <code>BoykovKolmogorov</code> gives.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public interface MaxFlow {
+
+    /**
+     * Computes the maximum flow. Calling it again returns the same value.
+     *
+     * @return the value of the maximum flow
+     */
+    double maxFlow();
+
+    /**
+     * @param v a vertex
+     * @return true if the vertex v is in the source side of the min cut
+     */
+    boolean isSourceSide(int v);
+
+    /**
+     * @return the source side of the min cut as a set of vertex indexes
+     */
+    BitSet sourceSide();
+}
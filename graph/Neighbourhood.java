@@ -0,0 +1,154 @@
+package graph;
+
+/**
+ * The neighbourhood of the pixels, or voxels, of a {@link GridGraph} given
+ * as a stencil: the list of displacements (dx, dy, dz) from a pixel to its
+ * neighbours. The index of a displacement in the list is its direction, and
+ * every displacement must have its opposite in the list, so each n-link has
+ * a reverse arc.
+ *
+ * In the predefined neighbourhoods the first directions are always
+ * {@link GridGraph#RIGHT}, {@link GridGraph#DOWN}, {@link GridGraph#LEFT} and
+ * {@link GridGraph#UP}, and in the volumes they are followed by
+ * {@link GridGraph#NEXT_SLICE} and {@link GridGraph#PREVIOUS_SLICE}.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class Neighbourhood {
+
+    /** Largest number of directions, the rest of a byte is used by the solvers */
+    static final int MAX_DIRECTIONS = 125;
+
+    /** 4-connected pixels */
+    public static final Neighbourhood FOUR = new Neighbourhood(
+            new int[]{1, 0, -1, 0},
+            new int[]{0, 1, 0, -1},
+            new int[]{0, 0, 0, 0});
+
+    /** 8-connected pixels, the diagonals after the 4 axis directions */
+    public static final Neighbourhood EIGHT = new Neighbourhood(
+            new int[]{1, 0, -1, 0, 1, -1, -1, 1},
+            new int[]{0, 1, 0, -1, 1, 1, -1, -1},
+            new int[]{0, 0, 0, 0, 0, 0, 0, 0});
+
+    /** 6-connected voxels */
+    public static final Neighbourhood SIX = new Neighbourhood(
+            new int[]{1, 0, -1, 0, 0, 0},
+            new int[]{0, 1, 0, -1, 0, 0},
+            new int[]{0, 0, 0, 0, 1, -1});
+
+    /** 26-connected voxels, the diagonals after the 6 axis directions */
+    public static final Neighbourhood TWENTY_SIX = cube();
+
+    private final int[] dx;
+
+    private final int[] dy;
+
+    private final int[] dz;
+
+    /** Direction opposite to each direction */
+    private final int[] opposite;
+
+    /**
+     * Creates a neighbourhood from the displacements of its directions
+     *
+     * @param dx horizontal displacement of each direction
+     * @param dy vertical displacement of each direction
+     * @param dz displacement between slices of each direction, all zero for
+     * images
+     */
+    public Neighbourhood(int[] dx, int[] dy, int[] dz) {
+        int n = dx.length;
+        if (dy.length != n || dz.length != n) {
+            throw new IllegalArgumentException("The displacements must have the same length");
+        }
+        if (n == 0 || n > MAX_DIRECTIONS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_DIRECTIONS + " directions are allowed");
+        }
+        this.dx = dx.clone();
+        this.dy = dy.clone();
+        this.dz = dz.clone();
+        this.opposite = new int[n];
+        for (int d = 0; d < n; d++) {
+            if (dx[d] == 0 && dy[d] == 0 && dz[d] == 0) {
+                throw new IllegalArgumentException("Direction " + d + " has no displacement");
+            }
+            opposite[d] = -1;
+            for (int e = 0; e < n; e++) {
+                if (e != d && dx[e] == dx[d] && dy[e] == dy[d] && dz[e] == dz[d]) {
+                    throw new IllegalArgumentException("Directions " + d + " and " + e + " are equal");
+                }
+                if (dx[e] == -dx[d] && dy[e] == -dy[d] && dz[e] == -dz[d]) {
+                    opposite[d] = e;
+                }
+            }
+            if (opposite[d] < 0) {
+                throw new IllegalArgumentException("Direction " + d + " has no opposite");
+            }
+        }
+    }
+
+    /**
+     * The 6 axis directions followed by the other 20 neighbours of the
+     * 3 x 3 x 3 cube.
+     */
+    private static Neighbourhood cube() {
+        int[] dx = new int[26];
+        int[] dy = new int[26];
+        int[] dz = new int[26];
+        int n = 0;
+        for (int d = 0; d < 6; d++, n++) {
+            dx[n] = SIX.dx[d];
+            dy[n] = SIX.dy[d];
+            dz[n] = SIX.dz[d];
+        }
+        for (int z = -1; z <= 1; z++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int x = -1; x <= 1; x++) {
+                    if (Math.abs(x) + Math.abs(y) + Math.abs(z) > 1) {
+                        dx[n] = x;
+                        dy[n] = y;
+                        dz[n] = z;
+                        n++;
+                    }
+                }
+            }
+        }
+        return new Neighbourhood(dx, dy, dz);
+    }
+
+    /**
+     * @return the number of directions
+     */
+    public int size() {
+        return dx.length;
+    }
+
+    /**
+     * @return the horizontal displacement of the direction d
+     */
+    public int dx(int d) {
+        return dx[d];
+    }
+
+    /**
+     * @return the vertical displacement of the direction d
+     */
+    public int dy(int d) {
+        return dy[d];
+    }
+
+    /**
+     * @return the displacement between slices of the direction d
+     */
+    public int dz(int d) {
+        return dz[d];
+    }
+
+    /**
+     * @return the direction opposite to d
+     */
+    public int opposite(int d) {
+        return opposite[d];
+    }
+}
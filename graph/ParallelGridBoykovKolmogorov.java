@@ -0,0 +1,164 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import util.Workers;
+
+/**
+ * A parallel Boykov-Kolmogorov solver for a {@link GridGraph}, following the
+ * bottom-up merging of Liu and Sun. The image is cut into slabs of whole
+ * rows, or of whole slices for volumes, one per thread, and each slab is
+ * solved concurrently with {@link GridBoykovKolmogorov}, ignoring the
+ * n-links to the other slabs. Then pairs of adjacent slabs are merged, again
+ * concurrently, until one region is left: a merged region keeps the flow and
+ * the search trees of its halves, and only the pixels next to the seam are
+ * activated, so most of the work done in the slabs isn't repeated.
+ *
+ * The last merge is a Boykov-Kolmogorov solve of the whole graph, so the
+ * min cut is the same as the one of a single threaded solve; the flow value
+ * can differ in the rounding of the float capacities.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ *
+ * @InProceedings{Liu and Sun 2010, author = "Jiangyu Liu and Jian Sun",
+ * title = "Parallel Graph-cuts by Adaptive Bottom-up Merging", booktitle =
+ * "<i>IEEE Conference on Computer Vision and Pattern Recognition</i>", year =
+ * "2010", pages = "2181-2188"}
+ */
+public class ParallelGridBoykovKolmogorov implements MaxFlow {
+
+    /** The given graph to apply this algorithm */
+    private final GridGraph graph;
+
+    /** Solver of the whole graph, holding the residual graph and the search trees */
+    private final GridBoykovKolmogorov whole;
+
+    /** Number of threads */
+    private int threads;
+
+    /** Value of the max flow */
+    private double flow;
+
+    /** True once the max flow was found */
+    private boolean solved;
+
+    /**
+     * Prepares the solver, folding the t-links of the graph into the terminal
+     * capacities and initializing the search trees.
+     *
+     * @param graph the grid graph, its n-link capacities are modified
+     */
+    public ParallelGridBoykovKolmogorov(GridGraph graph) {
+        this.graph = graph;
+        this.whole = new GridBoykovKolmogorov(graph, false);
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Solves the slabs and merges them.
+     *
+     * @return the value of the maximum flow
+     */
+    @Override
+    public double maxFlow() {
+        if (solved) {
+            return flow;
+        }
+        int n = graph.size();
+        int unit = graph.getWidth();
+        if (graph.getDepth() > 1) {
+            unit *= graph.getHeight();
+        }
+        int k = Math.max(1, Math.min(threads, n / unit));
+
+        GridBoykovKolmogorov[] solvers = new GridBoykovKolmogorov[k];
+        for (int i = 0; i < k; i++) {
+            int lo = (int) ((long) (n / unit) * i / k) * unit;
+            int hi = (i == k - 1) ? n : (int) ((long) (n / unit) * (i + 1) / k) * unit;
+            solvers[i] = (k == 1) ? whole : new GridBoykovKolmogorov(whole, lo, hi);
+            solvers[i].activateRange(lo, hi);
+        }
+        solve(solvers);
+
+        while (k > 1) {
+            int m = (k + 1) / 2;
+            GridBoykovKolmogorov[] merged = new GridBoykovKolmogorov[m];
+            for (int j = 0; j < m; j++) {
+                if (2 * j + 1 < k) {
+                    GridBoykovKolmogorov a = solvers[2 * j];
+                    GridBoykovKolmogorov b = solvers[2 * j + 1];
+                    merged[j] = (m == 1) ? whole : new GridBoykovKolmogorov(whole, a.lo(), b.hi());
+                    merged[j].merge(a, b);
+                }
+                else {
+                    // the last region waits for the next level
+                    merged[j] = solvers[2 * j];
+                }
+            }
+            solve(merged);
+            solvers = merged;
+            k = m;
+        }
+
+        flow = whole.maxFlow();
+        solved = true;
+        return flow;
+    }
+
+    /**
+     * Runs the solvers at the same time, one in the calling thread.
+     */
+    private void solve(GridBoykovKolmogorov[] solvers) {
+        ArrayList<Runnable> jobs = new ArrayList<Runnable>(solvers.length);
+        for (final GridBoykovKolmogorov solver : solvers) {
+            jobs.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    solver.maxFlow();
+                }
+            });
+        }
+        Workers.run(jobs);
+    }
+
+    @Override
+    public boolean isSourceSide(int p) {
+        maxFlow();
+        return whole.isSourceSide(p);
+    }
+
+    @Override
+    public BitSet sourceSide() {
+        maxFlow();
+        return whole.sourceSide();
+    }
+
+    /**
+     * @param mask a mask with one entry per pixel, it is overwritten
+     * @param value the value of the pixels in the source side, the others
+     * are set to zero
+     * @see GridBoykovKolmogorov#sourceSide(byte[], byte)
+     */
+    public void sourceSide(byte[] mask, byte value) {
+        maxFlow();
+        whole.sourceSide(mask, value);
+    }
+
+    /**
+     * @param threads the number of threads to use, also the number of slabs
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @return the graph
+     */
+    public GridGraph getGraph() {
+        return graph;
+    }
+}
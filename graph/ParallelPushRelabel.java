@@ -0,0 +1,593 @@
+package graph;
+
+import java.util.BitSet;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A parallel push-relabel max-flow / min-cut solver on a {@link CompactGraph},
+ * following the synchronous scheme of Baumstark, Blelloch and Shun. The
+ * computation runs in rounds; in every round the worker threads discharge
+ * all the active vertexes at once, reading the labels of the previous round:
+ *
+ * 1. every active vertex pushes its excess through its admissible arcs. A
+ * pair of opposite arcs can only be admissible in one direction, so each
+ * residual capacity is written by a single thread; the excess received by a
+ * vertex is added atomically to a separate array, and the vertexes receiving
+ * excess are claimed with an atomic flag to form the next working set.
+ *
+ * 2. the vertexes with excess left compute their new label from the settled
+ * residual capacities.
+ *
+ * 3. the new labels and the received excess are applied.
+ *
+ * When enough work was done since the last one, a global relabeling sets
+ * the labels to the distances to the sink with a level synchronous parallel
+ * breadth-first search, where the vertexes of the next level are claimed
+ * with compare-and-set. The second phase, returning the excess to the source
+ * and extracting the cut, is the one of {@link PushRelabel}, so the cut is
+ * the same.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ *
+ * @InProceedings{Baumstark et al. 2015, author = "Niklas Baumstark and Guy
+ * Blelloch and Julian Shun", title = "Efficient Implementation of a
+ * Synchronous Parallel Push-Relabel Algorithm", booktitle = "<i>Algorithms -
+ * ESA 2015</i>", year = "2015", pages = "106-117"}
+ */
+public class ParallelPushRelabel implements MaxFlow {
+
+    /** Weight of the vertexes in the global relabeling frequency */
+    private static final int ALPHA = 6;
+
+    /** Work counted per relabel, besides the scanned arcs */
+    private static final int BETA = 12;
+
+    /** Vertexes taken at once by a thread from a working set */
+    private static final int CHUNK = 64;
+
+    /** The steps run by all the threads between two barriers */
+    private static final int PUSH = 0;
+
+    private static final int RELABEL = 1;
+
+    private static final int APPLY = 2;
+
+    private static final int BFS = 3;
+
+    private static final int UNREACHED = 4;
+
+    private static final int COLLECT = 5;
+
+    private static final int STOP = 6;
+
+    /** The given graph to apply this algorithm */
+    private final CompactGraph graph;
+
+    /** the source vertex for the algorithm */
+    private final int source;
+
+    /** the sink vertex for the algorithm */
+    private final int sink;
+
+    /** Number of vertexes */
+    private final int n;
+
+    /** CSR arrays of the graph */
+    private final int[] offsets;
+
+    private final int[] targets;
+
+    private final int[] reverse;
+
+    private final float[] cap;
+
+    /** Label of each vertex */
+    private final int[] d;
+
+    /** Label of each active vertex for the next round */
+    private final int[] newLabel;
+
+    /** Excess of each vertex */
+    private final float[] excess;
+
+    /** Excess received in the current round, as float bits */
+    private final AtomicIntegerArray added;
+
+    /** Flags of the vertexes already in the next working set */
+    private final AtomicIntegerArray claimed;
+
+    /** Number of the global relabeling that reached each vertex */
+    private final AtomicIntegerArray visited;
+
+    /** Current working set */
+    private int[] work;
+
+    private int workSize;
+
+    /** Next working set */
+    private int[] next;
+
+    private final AtomicInteger nextSize = new AtomicInteger();
+
+    /** Position of the next chunk of the current step */
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    /** Work done since the last global relabeling */
+    private final AtomicLong workDone = new AtomicLong();
+
+    /** Step being run */
+    private volatile int step;
+
+    /** First failure of a step in any of the threads */
+    private volatile Throwable failure;
+
+    /** Label of the BFS level being expanded */
+    private int level;
+
+    /** Number of the current global relabeling */
+    private int relabels;
+
+    /** Frequency of the global relabeling */
+    private double globalRelabelFrequency = 0.5;
+
+    /** Number of threads */
+    private int threads;
+
+    /** Source side of the min cut */
+    private BitSet cut;
+
+    /** Value of the max flow */
+    private double flow;
+
+    /**
+     * Prepares the solver
+     *
+     * @param graph the graph, its capacities are modified
+     * @param source the source vertex index
+     * @param sink the sink vertex index
+     */
+    public ParallelPushRelabel(CompactGraph graph, int source, int sink) {
+        if (source == sink) {
+            throw new IllegalArgumentException("Source and sink must be different");
+        }
+        this.graph = graph;
+        this.source = source;
+        this.sink = sink;
+        this.n = graph.size();
+        this.offsets = graph.offsets;
+        this.targets = graph.targets;
+        this.reverse = graph.reverse;
+        this.cap = graph.capacities;
+        this.d = new int[n];
+        this.newLabel = new int[n];
+        this.excess = new float[n];
+        this.added = new AtomicIntegerArray(n);
+        this.claimed = new AtomicIntegerArray(n);
+        this.visited = new AtomicIntegerArray(n);
+        this.work = new int[n];
+        this.next = new int[n];
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Computes the maximum flow and the min cut.
+     *
+     * @return the value of the maximum flow
+     */
+    @Override
+    public double maxFlow() {
+        if (cut != null) {
+            return flow;
+        }
+
+        // saturate the arcs leaving the source
+        for (int a = offsets[source]; a < offsets[source + 1]; a++) {
+            float c = cap[a];
+            if (c > 0) {
+                int w = targets[a];
+                if (w == sink) {
+                    flow += c;
+                }
+                cap[a] = 0;
+                cap[reverse[a]] += c;
+                excess[w] += c;
+                excess[source] -= c;
+            }
+        }
+
+        final CyclicBarrier start = new CyclicBarrier(threads);
+        final CyclicBarrier end = new CyclicBarrier(threads);
+        Thread[] workers = new Thread[threads - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            start.await();
+                            if (step == STOP) {
+                                return;
+                            }
+                            runStepOrFail();
+                            end.await();
+                        }
+                    }
+                    catch (InterruptedException ex) {
+                        // the barriers break, so the other threads don't wait
+                        fail(ex);
+                        Thread.currentThread().interrupt();
+                    }
+                    catch (BrokenBarrierException ex) {
+                    }
+                }
+            });
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+
+        try {
+            // phase 1: maximum preflow
+            globalRelabel(start, end);
+            long limit = ALPHA * (long) n + offsets[n];
+            while (workSize > 0 && failure == null) {
+                nextSize.set(0);
+                run(PUSH, start, end);
+                run(RELABEL, start, end);
+                run(APPLY, start, end);
+
+                int[] t = work;
+                work = next;
+                next = t;
+                workSize = nextSize.get();
+                if (workDone.get() * globalRelabelFrequency > limit) {
+                    globalRelabel(start, end);
+                }
+            }
+            step = STOP;
+            start.await();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing the max flow");
+        }
+        catch (BrokenBarrierException ex) {
+            // a worker was interrupted, the failure is recorded
+        }
+        for (int i = 0; i < workers.length; i++) {
+            try {
+                workers[i].join();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null) {
+            throw new IllegalStateException("A worker thread failed", failure);
+        }
+
+        // phase 2: return the excess to the source and find the cut
+        PushRelabel.returnExcess(graph, source, sink, excess, d, newLabel);
+        cut = PushRelabel.reachable(graph, source);
+        return flow;
+    }
+
+    /**
+     * Runs one step on all the threads, the calling thread included.
+     */
+    private void run(int s, CyclicBarrier start, CyclicBarrier end)
+            throws InterruptedException, BrokenBarrierException {
+        step = s;
+        cursor.set(0);
+        start.await();
+        runStepOrFail();
+        end.await();
+    }
+
+    /**
+     * Runs the current step unless a thread has failed, and records the
+     * failure. The failing thread still arrives at the barriers, so no thread
+     * waits for it forever, and the steps left are skipped until the calling
+     * thread stops the workers and throws the failure.
+     */
+    private void runStepOrFail() {
+        if (failure != null) {
+            return;
+        }
+        try {
+            runStep();
+        }
+        catch (Throwable ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * Keeps the first failure.
+     */
+    private synchronized void fail(Throwable ex) {
+        if (failure == null) {
+            failure = ex;
+        }
+    }
+
+    private void runStep() {
+        switch (step) {
+            case PUSH:
+                push();
+                break;
+            case RELABEL:
+                relabel();
+                break;
+            case APPLY:
+                apply();
+                break;
+            case BFS:
+                expand();
+                break;
+            case UNREACHED:
+                unreached();
+                break;
+            case COLLECT:
+                collect();
+                break;
+        }
+    }
+
+    /**
+     * Every vertex of the working set pushes its excess through the arcs
+     * that were admissible at the start of the round.
+     */
+    private void push() {
+        double toSink = 0;
+        int i;
+        while ((i = cursor.getAndAdd(CHUNK)) < workSize) {
+            int last = Math.min(workSize, i + CHUNK);
+            for (; i < last; i++) {
+                int v = work[i];
+                if (d[v] >= n) {
+                    // lifted out in the previous round, its excess returns to the source
+                    continue;
+                }
+                float e = excess[v];
+                int h = d[v] - 1;
+                for (int a = offsets[v]; a < offsets[v + 1] && e > 0; a++) {
+                    if (cap[a] > 0) {
+                        int w = targets[a];
+                        if (d[w] == h) {
+                            float delta = Math.min(e, cap[a]);
+                            cap[a] -= delta;
+                            cap[reverse[a]] += delta;
+                            e -= delta;
+                            if (w == sink) {
+                                toSink += delta;
+                            }
+                            else {
+                                add(w, delta);
+                                enqueue(w);
+                            }
+                        }
+                    }
+                }
+                excess[v] = e;
+            }
+        }
+        addFlow(toSink);
+    }
+
+    /**
+     * The vertexes with excess left take the lowest label that makes one of
+     * their residual arcs admissible.
+     */
+    private void relabel() {
+        long local = 0;
+        int i;
+        while ((i = cursor.getAndAdd(CHUNK)) < workSize) {
+            int last = Math.min(workSize, i + CHUNK);
+            for (; i < last; i++) {
+                int v = work[i];
+                if (excess[v] <= 0 || d[v] >= n) {
+                    newLabel[v] = d[v];
+                    continue;
+                }
+                int min = n;
+                for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+                    if (cap[a] > 0 && d[targets[a]] + 1 < min) {
+                        min = d[targets[a]] + 1;
+                    }
+                }
+                newLabel[v] = min;
+                local += BETA + offsets[v + 1] - offsets[v];
+                if (min < n) {
+                    enqueue(v);
+                }
+            }
+        }
+        workDone.addAndGet(local);
+    }
+
+    /**
+     * Applies the new labels and the received excess.
+     */
+    private void apply() {
+        int size = nextSize.get();
+        int total = workSize + size;
+        int i;
+        while ((i = cursor.getAndAdd(CHUNK)) < total) {
+            int last = Math.min(total, i + CHUNK);
+            for (; i < last; i++) {
+                if (i < workSize) {
+                    int v = work[i];
+                    d[v] = newLabel[v];
+                }
+                else {
+                    int v = next[i - workSize];
+                    int bits = added.getAndSet(v, 0);
+                    excess[v] += Float.intBitsToFloat(bits);
+                    claimed.set(v, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the labels to the distances to the sink, by a level synchronous
+     * breadth-first search over the reverse residual arcs, and collects the
+     * active vertexes that can reach the sink as the new working set.
+     */
+    private void globalRelabel(CyclicBarrier start, CyclicBarrier end)
+            throws InterruptedException, BrokenBarrierException {
+        workDone.set(0);
+        relabels++;
+        visited.set(sink, relabels);
+        visited.set(source, relabels);
+        d[sink] = 0;
+        d[source] = n;
+
+        // the working sets hold the BFS frontiers
+        work[0] = sink;
+        workSize = 1;
+        level = 0;
+        while (workSize > 0) {
+            nextSize.set(0);
+            run(BFS, start, end);
+            int[] t = work;
+            work = next;
+            next = t;
+            workSize = nextSize.get();
+            level++;
+        }
+
+        run(UNREACHED, start, end);
+        nextSize.set(0);
+        run(COLLECT, start, end);
+        int[] t = work;
+        work = next;
+        next = t;
+        workSize = nextSize.get();
+    }
+
+    /**
+     * Expands one level of the global relabeling BFS.
+     */
+    private void expand() {
+        int label = level + 1;
+        int i;
+        while ((i = cursor.getAndAdd(CHUNK)) < workSize) {
+            int last = Math.min(workSize, i + CHUNK);
+            for (; i < last; i++) {
+                int w = work[i];
+                for (int a = offsets[w]; a < offsets[w + 1]; a++) {
+                    int u = targets[a];
+                    if (cap[reverse[a]] > 0 && visited.get(u) != relabels) {
+                        int old = visited.get(u);
+                        if (old != relabels && visited.compareAndSet(u, old, relabels)) {
+                            d[u] = label;
+                            next[nextSize.getAndIncrement()] = u;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Lifts the vertexes not reached by the BFS out of the computation.
+     */
+    private void unreached() {
+        int i;
+        while ((i = cursor.getAndAdd(CHUNK)) < n) {
+            int last = Math.min(n, i + CHUNK);
+            for (; i < last; i++) {
+                if (visited.get(i) != relabels) {
+                    d[i] = n;
+                }
+            }
+        }
+        d[source] = n;
+    }
+
+    /**
+     * Collects the vertexes with excess that can reach the sink.
+     */
+    private void collect() {
+        int i;
+        while ((i = cursor.getAndAdd(CHUNK)) < n) {
+            int last = Math.min(n, i + CHUNK);
+            for (; i < last; i++) {
+                if (i != source && i != sink && excess[i] > 0 && d[i] < n) {
+                    next[nextSize.getAndIncrement()] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the vertex to the next working set, once.
+     */
+    private void enqueue(int v) {
+        if (claimed.compareAndSet(v, 0, 1)) {
+            next[nextSize.getAndIncrement()] = v;
+        }
+    }
+
+    /**
+     * Atomically adds delta to the excess received by v.
+     */
+    private void add(int v, float delta) {
+        while (true) {
+            int old = added.get(v);
+            int sum = Float.floatToRawIntBits(Float.intBitsToFloat(old) + delta);
+            if (added.compareAndSet(v, old, sum)) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void addFlow(double delta) {
+        flow += delta;
+    }
+
+    @Override
+    public boolean isSourceSide(int v) {
+        maxFlow();
+        return cut.get(v);
+    }
+
+    @Override
+    public BitSet sourceSide() {
+        maxFlow();
+        return (BitSet) cut.clone();
+    }
+
+    /**
+     * @param frequency how often the global relabeling runs, relative to the
+     * size of the graph; 0 disables it
+     */
+    public void setGlobalRelabelFrequency(double frequency) {
+        if (frequency < 0) {
+            throw new IllegalArgumentException("Frequency must be nonnegative");
+        }
+        this.globalRelabelFrequency = frequency;
+    }
+
+    /**
+     * @param threads the number of threads to use
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @return the graph
+     */
+    public CompactGraph getGraph() {
+        return graph;
+    }
+}
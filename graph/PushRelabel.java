@@ -0,0 +1,554 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * The Goldberg-Tarjan push-relabel max-flow / min-cut algorithm on a
+ * {@link CompactGraph}, with the heuristics of Cherkassky and Goldberg: the
+ * active vertexes are selected in FIFO order or by highest label; the labels
+ * are periodically recomputed as the exact distances to the sink by a reverse
+ * breadth-first search (global relabeling); and when no vertex is left at
+ * some height, every vertex above it is lifted out of the computation, since
+ * it can't reach the sink anymore (gap heuristic).
+ *
+ * The first phase computes a maximum preflow, whose value is the max flow.
+ * The second phase returns the excess left in the vertexes to the source,
+ * pushing along the distances to the source, so the preflow becomes a flow
+ * and the source side of the min cut is the set of vertexes reachable from
+ * the source in the residual graph, as in the other solvers.
+ *
+ * A <code>Graph</code> can also be given; it is converted to a
+ * <code>CompactGraph</code> and left unchanged.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ *
+ * @Article{Cherkassky and Goldberg 1997, author = "Boris V. Cherkassky and
+ * Andrew V. Goldberg", title = "On Implementing the Push-Relabel Method for
+ * the Maximum Flow Problem", journal = "<i>Algorithmica</i>", year = "1997",
+ * volume = "19", pages = "390-410"}
+ */
+public class PushRelabel implements MaxFlow {
+
+    /** Order in which the active vertexes are discharged */
+    public enum Selection {
+
+        /** First in, first out */
+        FIFO,
+        /** The active vertex with the highest label first */
+        HIGHEST_LABEL
+    }
+
+    /** Weight of the vertexes in the global relabeling frequency */
+    private static final int ALPHA = 6;
+
+    /** Work counted per relabel, besides the scanned arcs */
+    private static final int BETA = 12;
+
+    /** The given graph to apply this algorithm */
+    private final CompactGraph graph;
+
+    /** The original graph, if it was given */
+    private final Graph objectGraph;
+
+    /** the source vertex for the algorithm */
+    private final int source;
+
+    /** the sink vertex for the algorithm */
+    private final int sink;
+
+    /** Number of vertexes */
+    private final int n;
+
+    /** CSR arrays of the graph */
+    private final int[] offsets;
+
+    private final int[] targets;
+
+    private final int[] reverse;
+
+    private final float[] cap;
+
+    /** Label of each vertex */
+    private final int[] d;
+
+    /** Excess of each vertex */
+    private final float[] excess;
+
+    /** Current arc of each vertex */
+    private final int[] current;
+
+    /** First active vertex of each height, highest label selection */
+    private final int[] activeHead;
+
+    /** Next active vertex at the same height */
+    private final int[] activeNext;
+
+    /** First vertex of each height, for the gap heuristic */
+    private final int[] allHead;
+
+    private final int[] allNext;
+
+    private final int[] allPrev;
+
+    /** Active vertexes, FIFO selection */
+    private final IntQueue queue;
+
+    /** Highest height with an active vertex */
+    private int aMax;
+
+    /** Highest height with a vertex */
+    private int dMax;
+
+    /** Work done since the last global relabeling */
+    private long work;
+
+    /** Frequency of the global relabeling */
+    private double globalRelabelFrequency = 0.5;
+
+    private Selection selection = Selection.HIGHEST_LABEL;
+
+    /** Source side of the min cut */
+    private BitSet cut;
+
+    /** Value of the max flow */
+    private double flow;
+
+    /**
+     * Prepares the solver
+     *
+     * @param graph the graph, its capacities are modified
+     * @param source the source vertex index
+     * @param sink the sink vertex index
+     */
+    public PushRelabel(CompactGraph graph, int source, int sink) {
+        this(graph, null, source, sink);
+    }
+
+    /**
+     * Prepares the solver on a copy of the given graph
+     *
+     * @param graph the directed weighted graph, it isn't modified
+     * @param source vertex with no predecessor
+     * @param target one vertex with no successor
+     */
+    public PushRelabel(Graph graph, Vertex source, Vertex target) {
+        this(CompactGraphBuilder.fromGraph(graph), graph, source.name(), target.name());
+    }
+
+    private PushRelabel(CompactGraph graph, Graph objectGraph, int source, int sink) {
+        if (objectGraph != null) {
+            source = graph.indexOf(source);
+            sink = graph.indexOf(sink);
+            if (source < 0 || sink < 0) {
+                throw new IllegalArgumentException("Source or sink isn't present in the graph");
+            }
+        }
+        if (source == sink) {
+            throw new IllegalArgumentException("Source and sink must be different");
+        }
+        this.graph = graph;
+        this.objectGraph = objectGraph;
+        this.source = source;
+        this.sink = sink;
+        this.n = graph.size();
+        this.offsets = graph.offsets;
+        this.targets = graph.targets;
+        this.reverse = graph.reverse;
+        this.cap = graph.capacities;
+        this.d = new int[n];
+        this.excess = new float[n];
+        this.current = new int[n];
+        this.activeHead = new int[n];
+        this.activeNext = new int[n];
+        this.allHead = new int[n];
+        this.allNext = new int[n];
+        this.allPrev = new int[n];
+        this.queue = new IntQueue(n);
+    }
+
+    /**
+     * Computes the maximum flow and the min cut.
+     *
+     * @return the value of the maximum flow
+     */
+    @Override
+    public double maxFlow() {
+        if (cut != null) {
+            return flow;
+        }
+
+        // saturate the arcs leaving the source
+        for (int a = offsets[source]; a < offsets[source + 1]; a++) {
+            float c = cap[a];
+            if (c > 0) {
+                int w = targets[a];
+                if (w == sink) {
+                    flow += c;
+                }
+                cap[a] = 0;
+                cap[reverse[a]] += c;
+                excess[w] += c;
+                excess[source] -= c;
+            }
+        }
+
+        // phase 1: maximum preflow
+        globalRelabel();
+        if (selection == Selection.FIFO) {
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                if (d[v] < n && excess[v] > 0) {
+                    discharge(v);
+                    checkGlobalRelabel();
+                }
+            }
+        }
+        else {
+            while (aMax >= 0) {
+                int v = activeHead[aMax];
+                if (v < 0) {
+                    aMax--;
+                    continue;
+                }
+                activeHead[aMax] = activeNext[v];
+                discharge(v);
+                checkGlobalRelabel();
+            }
+        }
+
+        // phase 2: return the excess to the source and find the cut
+        returnExcess(graph, source, sink, excess, d, current);
+        cut = reachable(graph, source);
+        return flow;
+    }
+
+    /**
+     * Pushes the excess of v through the admissible arcs, relabeling v when
+     * none is left, until v has no excess or it can't reach the sink.
+     */
+    private void discharge(int v) {
+        while (true) {
+            int h = d[v] - 1;
+            int end = offsets[v + 1];
+            for (int a = current[v]; a < end; a++) {
+                if (cap[a] > 0) {
+                    int w = targets[a];
+                    if (d[w] == h) {
+                        float delta = Math.min(excess[v], cap[a]);
+                        cap[a] -= delta;
+                        cap[reverse[a]] += delta;
+                        if (w == sink) {
+                            flow += delta;
+                        }
+                        else if (excess[w] == 0) {
+                            activate(w);
+                        }
+                        excess[w] += delta;
+                        excess[v] -= delta;
+                        if (excess[v] <= 0) {
+                            current[v] = a;
+                            return;
+                        }
+                    }
+                }
+            }
+            relabel(v);
+            if (d[v] >= n) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gives v the lowest label that makes one of its arcs admissible, or lifts
+     * all the vertexes above v out of the computation if v was the last
+     * vertex of its height.
+     */
+    private void relabel(int v) {
+        work += BETA + offsets[v + 1] - offsets[v];
+        int h = d[v];
+        removeAll(v, h);
+        if (allHead[h] < 0) {
+            gap(h);
+            d[v] = n;
+            return;
+        }
+
+        int min = n;
+        for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+            if (cap[a] > 0 && d[targets[a]] + 1 < min) {
+                min = d[targets[a]] + 1;
+                current[v] = a;
+            }
+        }
+        d[v] = min;
+        if (min < n) {
+            addAll(v, min);
+        }
+    }
+
+    /**
+     * Gap heuristic: no vertex is left at height h, so the vertexes above h
+     * can't reach the sink.
+     */
+    private void gap(int h) {
+        for (int j = h + 1; j <= dMax; j++) {
+            for (int v = allHead[j]; v >= 0; v = allNext[v]) {
+                d[v] = n;
+            }
+            allHead[j] = -1;
+            activeHead[j] = -1;
+        }
+        dMax = h - 1;
+        aMax = Math.min(aMax, dMax);
+    }
+
+    /**
+     * Sets the labels to the exact distances to the sink in the residual
+     * graph, by a breadth-first search over the reverse arcs. The vertexes
+     * that can't reach the sink are lifted to n.
+     */
+    private void globalRelabel() {
+        work = 0;
+        for (int v = 0; v < n; v++) {
+            d[v] = n;
+        }
+        for (int h = 0; h < n; h++) {
+            allHead[h] = -1;
+            activeHead[h] = -1;
+        }
+        queue.clear();
+        aMax = -1;
+        dMax = 0;
+
+        IntQueue bfs = new IntQueue(n);
+        d[sink] = 0;
+        bfs.add(sink);
+        while (!bfs.isEmpty()) {
+            int w = bfs.poll();
+            int h = d[w] + 1;
+            for (int a = offsets[w]; a < offsets[w + 1]; a++) {
+                int u = targets[a];
+                if (d[u] == n && u != source && cap[reverse[a]] > 0) {
+                    d[u] = h;
+                    bfs.add(u);
+                    current[u] = offsets[u];
+                    addAll(u, h);
+                    if (excess[u] > 0) {
+                        activate(u);
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkGlobalRelabel() {
+        if (work * globalRelabelFrequency > (long) ALPHA * n + offsets[n]) {
+            globalRelabel();
+        }
+    }
+
+    private void activate(int v) {
+        if (selection == Selection.FIFO) {
+            queue.add(v);
+        }
+        else {
+            int h = d[v];
+            activeNext[v] = activeHead[h];
+            activeHead[h] = v;
+            if (h > aMax) {
+                aMax = h;
+            }
+        }
+    }
+
+    private void addAll(int v, int h) {
+        int first = allHead[h];
+        allNext[v] = first;
+        allPrev[v] = -1;
+        if (first >= 0) {
+            allPrev[first] = v;
+        }
+        allHead[h] = v;
+        if (h > dMax) {
+            dMax = h;
+        }
+    }
+
+    private void removeAll(int v, int h) {
+        int next = allNext[v];
+        int prev = allPrev[v];
+        if (prev >= 0) {
+            allNext[prev] = next;
+        }
+        else {
+            allHead[h] = next;
+        }
+        if (next >= 0) {
+            allPrev[next] = prev;
+        }
+    }
+
+    /**
+     * Second phase: pushes the excess left in the vertexes that can't reach
+     * the sink back to the source, with FIFO push-relabel on the distances to
+     * the source. The sink is never entered, so the flow value is kept.
+     * The labels and current arcs are overwritten.
+     */
+    static void returnExcess(CompactGraph graph, int source, int sink,
+            float[] excess, int[] d, int[] current) {
+        int n = graph.size();
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int[] reverse = graph.reverse;
+        float[] cap = graph.capacities;
+        for (int v = 0; v < n; v++) {
+            d[v] = Integer.MAX_VALUE;
+            current[v] = offsets[v];
+        }
+        IntQueue queue = new IntQueue(n);
+
+        // distances to the source
+        IntQueue bfs = new IntQueue(n);
+        d[source] = 0;
+        bfs.add(source);
+        while (!bfs.isEmpty()) {
+            int w = bfs.poll();
+            for (int a = offsets[w]; a < offsets[w + 1]; a++) {
+                int u = targets[a];
+                if (d[u] == Integer.MAX_VALUE && u != sink && cap[reverse[a]] > 0) {
+                    d[u] = d[w] + 1;
+                    bfs.add(u);
+                }
+            }
+        }
+
+        for (int v = 0; v < n; v++) {
+            if (v != source && v != sink && excess[v] > 0) {
+                queue.add(v);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            while (excess[v] > 0) {
+                int h = d[v] - 1;
+                int end = offsets[v + 1];
+                int a = current[v];
+                for (; a < end && excess[v] > 0; a++) {
+                    int w = targets[a];
+                    if (cap[a] > 0 && d[w] == h && w != sink) {
+                        float delta = Math.min(excess[v], cap[a]);
+                        cap[a] -= delta;
+                        cap[reverse[a]] += delta;
+                        if (excess[w] == 0 && w != source) {
+                            queue.add(w);
+                        }
+                        excess[w] += delta;
+                        excess[v] -= delta;
+                    }
+                }
+                if (excess[v] > 0) {
+                    // relabel
+                    int min = Integer.MAX_VALUE;
+                    for (int b = offsets[v]; b < end; b++) {
+                        int w = targets[b];
+                        if (cap[b] > 0 && w != sink && d[w] < min) {
+                            min = d[w];
+                        }
+                    }
+                    if (min == Integer.MAX_VALUE) {
+                        // only rounding residue can be left without a way back
+                        excess[v] = 0;
+                        break;
+                    }
+                    d[v] = min + 1;
+                    current[v] = offsets[v];
+                }
+                else {
+                    current[v] = a - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the vertexes reachable from the source in the residual graph
+     */
+    static BitSet reachable(CompactGraph graph, int source) {
+        int n = graph.size();
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        float[] cap = graph.capacities;
+        BitSet reached = new BitSet(n);
+        IntQueue bfs = new IntQueue(n);
+        reached.set(source);
+        bfs.add(source);
+        while (!bfs.isEmpty()) {
+            int v = bfs.poll();
+            for (int a = offsets[v]; a < offsets[v + 1]; a++) {
+                int w = targets[a];
+                if (cap[a] > 0 && !reached.get(w)) {
+                    reached.set(w);
+                    bfs.add(w);
+                }
+            }
+        }
+        return reached;
+    }
+
+    @Override
+    public boolean isSourceSide(int v) {
+        maxFlow();
+        return cut.get(v);
+    }
+
+    @Override
+    public BitSet sourceSide() {
+        maxFlow();
+        return (BitSet) cut.clone();
+    }
+
+    /**
+     * Gives the source side of the min cut as vertexes of the original
+     * <code>Graph</code>.
+     *
+     * @return the vertexes in the source side of the min cut
+     */
+    public ArrayList<Vertex> minCut() {
+        if (objectGraph == null) {
+            throw new IllegalStateException("The solver wasn't created from a Graph");
+        }
+        maxFlow();
+        ArrayList<Vertex> vertexes = new ArrayList<Vertex>(cut.cardinality());
+        for (int v = cut.nextSetBit(0); v >= 0; v = cut.nextSetBit(v + 1)) {
+            vertexes.add(objectGraph.getVertex(graph.name(v)));
+        }
+        return vertexes;
+    }
+
+    /**
+     * @param selection the order in which the active vertexes are discharged
+     */
+    public void setSelection(Selection selection) {
+        this.selection = selection;
+    }
+
+    /**
+     * @param frequency how often the global relabeling runs, relative to the
+     * size of the graph; 0 disables it
+     */
+    public void setGlobalRelabelFrequency(double frequency) {
+        if (frequency < 0) {
+            throw new IllegalArgumentException("Frequency must be nonnegative");
+        }
+        this.globalRelabelFrequency = frequency;
+    }
+
+    /**
+     * @return the graph
+     */
+    public CompactGraph getGraph() {
+        return graph;
+    }
+}
@@ -0,0 +1,209 @@
+package graph;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns the float energies of a cut into whole number capacities, so the
+ * max-flow solvers work with exact arithmetic. A capacity c becomes
+ * <code>round(c * scale)</code>, clamped to {@link #MAX_CAPACITY}, and the
+ * infinite t-links of hard constraints become {@link #HARD_CAPACITY}.
+ *
+ * The solvers keep their float arrays, but in a quantized grid graph every
+ * capacity, residual and excess is a whole number smaller than 2^24, so it
+ * is represented exactly by a float and the sums and differences done by the
+ * solvers are exact: a saturated arc has a residual of exactly zero, the
+ * bottleneck of a path is never a rounding leftover and the tests against
+ * zero are reliable. The bound comes from the at most
+ * {@link Neighbourhood#MAX_DIRECTIONS} n-links of a pixel; in the general
+ * graphs the degree isn't bounded, and the arithmetic is exact only while
+ * the capacities of the arcs of each vertex add up to less than 2^24.
+ *
+ * The value of the max flow is in quantized units and is converted back with
+ * {@link #energy(double)}. The capacities added to a dynamic cut must be
+ * quantized with the same quantizer.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class Quantizer {
+
+    /** Largest quantized capacity of a finite link */
+    public static final int MAX_CAPACITY = 1 << 16;
+
+    /**
+     * Capacity of the infinite t-links of hard constraints. It is larger than
+     * the other t-link and all the n-links of a pixel of a grid together, so
+     * cutting it always costs more than moving the pixel to the side of its
+     * terminal. An excess of a grid collects at most this t-link and the flow
+     * of {@link Neighbourhood#MAX_DIRECTIONS} n-links, so it stays below 2^24.
+     */
+    public static final int HARD_CAPACITY = (Neighbourhood.MAX_DIRECTIONS + 1) * MAX_CAPACITY + 1;
+
+    /** Quantized units per unit of energy */
+    private final float scale;
+
+    /**
+     * @param scale quantized units per unit of energy
+     */
+    public Quantizer(float scale) {
+        if (!(scale > 0) || Float.isInfinite(scale)) {
+            throw new IllegalArgumentException("The scale must be positive: " + scale);
+        }
+        this.scale = scale;
+    }
+
+    /**
+     * Creates a quantizer mapping the capacities between zero and a maximum
+     * to the whole range of the quantized capacities.
+     *
+     * @param maximum the largest finite capacity
+     * @return the quantizer
+     */
+    public static Quantizer forMaximum(float maximum) {
+        if (!(maximum > 0) || Float.isInfinite(maximum)) {
+            throw new IllegalArgumentException("The maximum must be positive: " + maximum);
+        }
+        return new Quantizer(MAX_CAPACITY / maximum);
+    }
+
+    /**
+     * Creates a quantizer for the largest finite capacity of a graph
+     *
+     * @param graph the grid graph
+     * @return the quantizer
+     */
+    public static Quantizer forGraph(GridGraph graph) {
+        float maximum = 0;
+        for (int p = 0; p < graph.size(); p++) {
+            maximum = max(maximum, graph.source[p]);
+            maximum = max(maximum, graph.sink[p]);
+        }
+        for (float[] c : graph.capacities) {
+            for (int p = 0; p < c.length; p++) {
+                maximum = max(maximum, c[p]);
+            }
+        }
+        return (maximum > 0) ? forMaximum(maximum) : new Quantizer(1);
+    }
+
+    private static float max(float maximum, float c) {
+        return (c > maximum && !Float.isInfinite(c)) ? c : maximum;
+    }
+
+    /**
+     * @return quantized units per unit of energy
+     */
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * Quantizes a finite capacity. Capacities larger than the range become
+     * {@link #MAX_CAPACITY}.
+     *
+     * @param capacity a capacity, not negative
+     * @return the quantized capacity
+     */
+    public int quantize(float capacity) {
+        if (!(capacity >= 0)) {
+            throw new IllegalArgumentException("Capacities can't be negative: " + capacity);
+        }
+        if (Float.isInfinite(capacity)) {
+            throw new IllegalArgumentException("Only the t-links can be infinite");
+        }
+        double q = Math.rint((double) capacity * scale);
+        return (q < MAX_CAPACITY) ? (int) q : MAX_CAPACITY;
+    }
+
+    /**
+     * Quantizes the capacity of a t-link, the infinite ones become
+     * {@link #HARD_CAPACITY}.
+     *
+     * @param capacity a capacity, not negative
+     * @return the quantized capacity
+     */
+    public int quantizeTerminal(float capacity) {
+        return (Float.isInfinite(capacity) && capacity > 0) ? HARD_CAPACITY : quantize(capacity);
+    }
+
+    /**
+     * @param flow a flow, or cut, in quantized units
+     * @return the flow in units of energy
+     */
+    public double energy(double flow) {
+        return flow / scale;
+    }
+
+    /**
+     * Quantizes the capacities of a grid graph in place
+     *
+     * @param graph the grid graph
+     */
+    public void apply(GridGraph graph) {
+        for (int p = 0; p < graph.size(); p++) {
+            graph.source[p] = quantizeTerminal(graph.source[p]);
+            graph.sink[p] = quantizeTerminal(graph.sink[p]);
+        }
+        for (float[] c : graph.capacities) {
+            for (int p = 0; p < c.length; p++) {
+                c[p] = quantize(c[p]);
+            }
+        }
+    }
+
+    /**
+     * Quantizes the capacities of a mapped grid graph in place, one region
+     * at a time
+     *
+     * @param graph the mapped grid graph, not solved yet
+     */
+    public void apply(MappedGridGraph graph) {
+        int directions = graph.getNeighbourhood().size();
+        int recordSize = graph.recordSize();
+        for (int r = 0; r < graph.regions(); r++) {
+            ByteBuffer b = graph.region(r);
+            for (int i = 0; i < b.limit(); i += recordSize) {
+                b.putFloat(i + MappedGridGraph.EXCESS, quantizeTerminal(b.getFloat(i + MappedGridGraph.EXCESS)));
+                b.putFloat(i + MappedGridGraph.SINK, quantizeTerminal(b.getFloat(i + MappedGridGraph.SINK)));
+                for (int d = 0; d < directions; d++) {
+                    int j = i + MappedGridGraph.CAPACITIES + 4 * d;
+                    b.putFloat(j, quantize(b.getFloat(j)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Quantizes the capacities of a compact graph in place. The arcs leaving
+     * the source and entering the sink are the t-links.
+     *
+     * @param graph the compact graph
+     * @param source the source vertex
+     * @param sink the sink vertex
+     */
+    public void apply(CompactGraph graph, int source, int sink) {
+        float[] c = graph.capacities;
+        for (int v = 0; v < graph.size(); v++) {
+            for (int a = graph.offsets[v]; a < graph.offsets[v + 1]; a++) {
+                boolean terminal = v == source || graph.targets[a] == sink;
+                c[a] = terminal ? quantizeTerminal(c[a]) : quantize(c[a]);
+            }
+        }
+    }
+
+    /**
+     * Quantizes the edge weights of a graph in place. The edges leaving the
+     * source and entering the sink are the t-links.
+     *
+     * @param graph the graph
+     * @param source the source vertex
+     * @param sink the sink vertex
+     */
+    public void apply(Graph graph, Vertex source, Vertex sink) {
+        for (Vertex v : graph.getVertexes()) {
+            for (Edge e : graph.getEdges2(v)) {
+                boolean terminal = v == source || e.getTarget() == sink;
+                e.setWeight(terminal ? quantizeTerminal(e.getWeight()) : quantize(e.getWeight()));
+            }
+        }
+    }
+}
@@ -0,0 +1,603 @@
+package graph;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A region push-relabel max-flow / min-cut solver for a
+ * {@link MappedGridGraph}, in the style of Delong and Boykov, for grids that
+ * don't fit in memory. The pixels are split in the regions of the graph, and
+ * the solver repeatedly discharges one active region, loading it together
+ * with its two neighbouring regions, which hold the pixels at the other end
+ * of its boundary n-links:
+ *
+ * 1. region relabel: the labels of the region are set to the exact
+ * distances to the sink through the region, taking the labels of the
+ * neighbouring regions as fixed. This never lowers a label and keeps the
+ * labeling valid.
+ *
+ * 2. the active pixels of the region are discharged by FIFO push-relabel;
+ * the flow pushed through a boundary n-link becomes the excess of a pixel of
+ * a neighbouring region, which becomes active. After as many relabels as
+ * pixels the region is relabeled again.
+ *
+ * At the start, and after every two discharges per region, a global
+ * relabel sets the labels to the distances to the sink in the whole graph,
+ * relabeling the regions in sweeps until no label changes, so the pixels
+ * that can't reach the sink stop being discharged.
+ *
+ * The next region to discharge is an active region of the working set of
+ * the graph if there is one, otherwise the closest active region in the
+ * direction of the current sweep, so the regions are read in file order
+ * as much as possible. Only the first phase of push-relabel is computed; the
+ * source side of the min cut is the set of pixels reached in the residual
+ * graph from the pixels left with excess, which is the same cut that
+ * {@link GridBoykovKolmogorov} finds on the same grid.
+ *
+ * Besides the working set of the graph, the solver keeps in memory the cut bits and
+ * two integer arrays of the size of a region.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ *
+ * @Article{Delong and Boykov 2008, author = "Andrew Delong and Yuri Boykov",
+ * title = "A Scalable Graph-Cut Algorithm for N-D Grids", journal = "<i>IEEE
+ * Conference on Computer Vision and Pattern Recognition</i>", year = "2008"}
+ */
+public class RegionPushRelabel implements MaxFlow {
+
+    private static final int EXCESS = MappedGridGraph.EXCESS;
+
+    private static final int SINK = MappedGridGraph.SINK;
+
+    private static final int LABEL = MappedGridGraph.LABEL;
+
+    private static final int CAPACITIES = MappedGridGraph.CAPACITIES;
+
+    /** Changes of the labels next to the previous and the next region */
+    private static final int LOW_CHANGED = 1;
+
+    private static final int HIGH_CHANGED = 2;
+
+    /** The given graph to apply this algorithm */
+    private final MappedGridGraph graph;
+
+    private final int width;
+
+    private final int height;
+
+    private final int depth;
+
+    /** Number of pixels */
+    private final int n;
+
+    /** Label of the pixels that can't reach the sink */
+    private final int infinite;
+
+    /** Number of directions */
+    private final int directions;
+
+    /** Displacements of each direction */
+    private final int[] dx;
+
+    private final int[] dy;
+
+    private final int[] dz;
+
+    /** Index displacement of each direction */
+    private final int[] offset;
+
+    /** Direction opposite to each direction */
+    private final int[] opposite;
+
+    /** Pixels within this index distance of a region end can have n-links out of it */
+    private final int span;
+
+    private final int regions;
+
+    private final int regionSize;
+
+    private final int recordSize;
+
+    /** Regions with active pixels */
+    private final boolean[] regionActive;
+
+    /** Regions whose labels are valid, the others count as unreachable */
+    private final boolean[] labeled;
+
+    /** Pixels to discharge, or to label, as indexes in the region */
+    private final IntQueue queue;
+
+    /** Distances computed by the region relabel */
+    private final int[] distance;
+
+    /** Boundary pixels of the region relabel, label in the high half */
+    private long[] seeds;
+
+    /** The loaded region and its neighbours */
+    private int region;
+
+    private ByteBuffer previous;
+
+    private ByteBuffer current;
+
+    private ByteBuffer next;
+
+    /** First pixel and end of the loaded region */
+    private int lo;
+
+    private int hi;
+
+    /** Direction of the sweep over the regions */
+    private int sweep = 1;
+
+    /** Value of the max flow */
+    private double flow;
+
+    /** Source side of the min cut, once solved */
+    private BitSet cut;
+
+    /**
+     * Prepares the solver
+     *
+     * @param graph the graph, its records are modified
+     */
+    public RegionPushRelabel(MappedGridGraph graph) {
+        this.graph = graph;
+        this.width = graph.getWidth();
+        this.height = graph.getHeight();
+        this.depth = graph.getDepth();
+        this.n = graph.size();
+        this.infinite = n + 1;
+        Neighbourhood neighbourhood = graph.getNeighbourhood();
+        this.directions = neighbourhood.size();
+        this.dx = new int[directions];
+        this.dy = new int[directions];
+        this.dz = new int[directions];
+        this.offset = new int[directions];
+        this.opposite = new int[directions];
+        int s = 0;
+        for (int d = 0; d < directions; d++) {
+            dx[d] = neighbourhood.dx(d);
+            dy[d] = neighbourhood.dy(d);
+            dz[d] = neighbourhood.dz(d);
+            opposite[d] = neighbourhood.opposite(d);
+            offset[d] = (dz[d] * height + dy[d]) * width + dx[d];
+            s = Math.max(s, Math.abs(offset[d]));
+        }
+        this.span = s;
+        this.regions = graph.regions();
+        this.regionSize = graph.regionSize();
+        this.recordSize = graph.recordSize();
+        this.regionActive = new boolean[regions];
+        this.labeled = new boolean[regions];
+        this.queue = new IntQueue(regionSize);
+        this.distance = new int[regionSize];
+        this.seeds = new long[64];
+    }
+
+    /**
+     * Discharges the active regions until there is none.
+     *
+     * @return the value of the maximum flow
+     */
+    @Override
+    public double maxFlow() {
+        if (cut != null) {
+            return flow;
+        }
+
+        // push the flow source -> p -> sink and clear the labels
+        for (int r = 0; r < regions; r++) {
+            ByteBuffer b = graph.region(r);
+            int size = Math.min(regionSize, n - r * regionSize);
+            for (int i = 0; i < size * recordSize; i += recordSize) {
+                float cs = b.getFloat(i + EXCESS);
+                float ct = b.getFloat(i + SINK);
+                float m = Math.min(cs, ct);
+                flow += m;
+                b.putFloat(i + EXCESS, cs - m);
+                b.putFloat(i + SINK, ct - m);
+                b.putInt(i + LABEL, 0);
+                if (cs > m) {
+                    regionActive[r] = true;
+                }
+            }
+        }
+
+        globalRelabel();
+        int discharges = 0;
+        for (int r = nextRegion(); r >= 0; r = nextRegion()) {
+            if (discharges == 2 * regions) {
+                globalRelabel();
+                discharges = 0;
+                continue;
+            }
+            load(r);
+            discharge();
+            regionActive[r] = false;
+            discharges++;
+        }
+
+        findCut();
+        return flow;
+    }
+
+    /**
+     * Sets every label to the distance to the sink in the whole residual
+     * graph, so the pixels that can't reach the sink stop being active. The
+     * regions are relabeled in sweeps up and down, a region being relabeled
+     * again when a neighbouring region changes the labels next to it, until
+     * no label changes; a region not yet relabeled counts as unreachable. It
+     * also finds the active regions.
+     */
+    private void globalRelabel() {
+        Arrays.fill(labeled, false);
+        boolean[] dirty = new boolean[regions];
+        Arrays.fill(dirty, true);
+        region = -1;
+        sweep = 1;
+        for (int r = nextRegion(dirty); r >= 0; r = nextRegion(dirty)) {
+            load(r);
+            dirty[r] = false;
+            int changed = labeled[r] ? 0 : LOW_CHANGED | HIGH_CHANGED;
+            labeled[r] = true;
+            changed |= relabelRegion();
+            if ((changed & LOW_CHANGED) != 0 && r > 0 && labeled[r - 1]) {
+                dirty[r - 1] = true;
+            }
+            if ((changed & HIGH_CHANGED) != 0 && r < regions - 1 && labeled[r + 1]) {
+                dirty[r + 1] = true;
+            }
+        }
+    }
+
+    /**
+     * Loads the region r and its neighbours, they stay in the working set
+     * of the graph until the next load.
+     */
+    private void load(int r) {
+        region = r;
+        lo = r * regionSize;
+        hi = Math.min(n, lo + regionSize);
+        current = graph.region(r);
+        previous = (r > 0) ? graph.region(r - 1) : null;
+        next = (r < regions - 1) ? graph.region(r + 1) : null;
+        // the current region is the most recently used
+        graph.region(r);
+    }
+
+    /**
+     * @return the next region to discharge, or -1 if no region is active
+     */
+    private int nextRegion() {
+        int best = -1;
+        for (int r = 0; r < regions; r++) {
+            if (regionActive[r] && graph.isResident(r)
+                    && (best < 0 || Math.abs(r - region) < Math.abs(best - region))) {
+                best = r;
+            }
+        }
+        return (best >= 0) ? best : nextRegion(regionActive);
+    }
+
+    /**
+     * Chooses the next marked region in the direction of the sweep, turning
+     * back at the last region.
+     *
+     * @return the region, or -1 if no region is marked
+     */
+    private int nextRegion(boolean[] marked) {
+        for (int turn = 0; turn < 2; turn++) {
+            for (int r = region + sweep; r >= 0 && r < regions; r += sweep) {
+                if (marked[r]) {
+                    return r;
+                }
+            }
+            sweep = -sweep;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the buffer holding the pixel p, which is in the loaded region
+     * or one of its neighbours
+     */
+    private ByteBuffer buffer(int p) {
+        if (p < lo) {
+            return previous;
+        }
+        return (p < hi) ? current : next;
+    }
+
+    /**
+     * @return the position of the record of the pixel p in its buffer
+     */
+    private int position(int p) {
+        if (p < lo) {
+            return (p - lo + regionSize) * recordSize;
+        }
+        return ((p < hi) ? p - lo : p - hi) * recordSize;
+    }
+
+    /**
+     * @return the neighbour of the pixel p = (x, y, z) in the direction d, or
+     * -1 if it is outside of the image
+     */
+    private int neighbour(int x, int y, int z, int p, int d) {
+        x += dx[d];
+        y += dy[d];
+        z += dz[d];
+        if (x < 0 || x >= width || y < 0 || y >= height || z < 0 || z >= depth) {
+            return -1;
+        }
+        return p + offset[d];
+    }
+
+    /**
+     * Sets the labels of the loaded region to the distances to the sink,
+     * going out of the region only through the n-links to the neighbouring
+     * regions, whose pixels keep their labels. The distances are found by a
+     * breadth-first search backwards from the pixels linked to the sink,
+     * where the boundary pixels enter the search at the level given by the
+     * label of their neighbour. The region is marked active if it has active
+     * pixels.
+     *
+     * @return LOW_CHANGED and HIGH_CHANGED if a label of a pixel with
+     * n-links to the previous or to the next region changed
+     */
+    private int relabelRegion() {
+        int size = hi - lo;
+        queue.clear();
+        for (int k = 0; k < size; k++) {
+            if (current.getFloat(k * recordSize + SINK) > 0) {
+                distance[k] = 1;
+                queue.add(k);
+            }
+            else {
+                distance[k] = infinite;
+            }
+        }
+
+        int count = 0;
+        for (int p = lo; p < hi; p++) {
+            if (p == lo + span && hi - span > p) {
+                p = hi - span;
+            }
+            int x = p % width;
+            int y = p / width % height;
+            int z = p / width / height;
+            int i = (p - lo) * recordSize;
+            for (int d = 0; d < directions; d++) {
+                int q = neighbour(x, y, z, p, d);
+                if ((q < lo || q >= hi) && q >= 0 && labeled[q / regionSize]
+                        && current.getFloat(i + CAPACITIES + 4 * d) > 0) {
+                    int h = buffer(q).getInt(position(q) + LABEL) + 1;
+                    if (h < distance[p - lo]) {
+                        if (count == seeds.length) {
+                            seeds = Arrays.copyOf(seeds, 2 * count);
+                        }
+                        seeds[count++] = ((long) h << 32) | (p - lo);
+                    }
+                }
+            }
+        }
+        Arrays.sort(seeds, 0, count);
+
+        int s = 0;
+        int level = 1;
+        while (true) {
+            if (queue.isEmpty()) {
+                if (s == count) {
+                    break;
+                }
+                level = (int) (seeds[s] >>> 32);
+            }
+            while (s < count && (int) (seeds[s] >>> 32) == level) {
+                int k = (int) seeds[s++];
+                if (distance[k] > level) {
+                    distance[k] = level;
+                    queue.add(k);
+                }
+            }
+            if (level >= infinite - 1) {
+                break;
+            }
+
+            // the pixels of this level, with an arc to one of them, get the next one
+            for (int m = queue.size(); m > 0; m--) {
+                int v = lo + queue.poll();
+                int x = v % width;
+                int y = v / width % height;
+                int z = v / width / height;
+                for (int d = 0; d < directions; d++) {
+                    int u = neighbour(x, y, z, v, d);
+                    if (u >= lo && u < hi && distance[u - lo] > level + 1
+                            && current.getFloat((u - lo) * recordSize + CAPACITIES + 4 * opposite[d]) > 0) {
+                        distance[u - lo] = level + 1;
+                        queue.add(u - lo);
+                    }
+                }
+            }
+            level++;
+        }
+
+        int changed = 0;
+        boolean active = false;
+        for (int k = 0; k < size; k++) {
+            int i = k * recordSize;
+            if (current.getInt(i + LABEL) != distance[k]) {
+                current.putInt(i + LABEL, distance[k]);
+                if (k < span) {
+                    changed |= LOW_CHANGED;
+                }
+                if (k >= size - span) {
+                    changed |= HIGH_CHANGED;
+                }
+            }
+            if (distance[k] < infinite && current.getFloat(i + EXCESS) > 0) {
+                active = true;
+            }
+        }
+        regionActive[region] = active;
+        return changed;
+    }
+
+    /**
+     * Discharges the active pixels of the loaded region in FIFO order. The
+     * region is relabeled first, and again after as many relabels as pixels,
+     * so the pixels cut from the sink don't climb one label at a time.
+     */
+    private void discharge() {
+        int size = hi - lo;
+        int relabels = size;
+        while (true) {
+            if (relabels >= size) {
+                relabelRegion();
+                relabels = 0;
+                queue.clear();
+                for (int k = 0; k < size; k++) {
+                    int i = k * recordSize;
+                    if (current.getFloat(i + EXCESS) > 0 && current.getInt(i + LABEL) < infinite) {
+                        queue.add(k);
+                    }
+                }
+            }
+            if (queue.isEmpty()) {
+                return;
+            }
+
+            int u = lo + queue.poll();
+            int i = (u - lo) * recordSize;
+            float e = current.getFloat(i + EXCESS);
+            int h = current.getInt(i + LABEL);
+            int x = u % width;
+            int y = u / width % height;
+            int z = u / width / height;
+            while (e > 0) {
+                // push
+                if (h == 1) {
+                    float c = current.getFloat(i + SINK);
+                    if (c > 0) {
+                        float delta = Math.min(e, c);
+                        current.putFloat(i + SINK, c - delta);
+                        e -= delta;
+                        flow += delta;
+                    }
+                }
+                for (int d = 0; d < directions && e > 0; d++) {
+                    int q = neighbour(x, y, z, u, d);
+                    if (q < 0) {
+                        continue;
+                    }
+                    float c = current.getFloat(i + CAPACITIES + 4 * d);
+                    if (c <= 0) {
+                        continue;
+                    }
+                    ByteBuffer b = buffer(q);
+                    int j = position(q);
+                    if (b.getInt(j + LABEL) != h - 1) {
+                        continue;
+                    }
+                    float delta = Math.min(e, c);
+                    current.putFloat(i + CAPACITIES + 4 * d, c - delta);
+                    int rc = j + CAPACITIES + 4 * opposite[d];
+                    b.putFloat(rc, b.getFloat(rc) + delta);
+                    float eq = b.getFloat(j + EXCESS);
+                    b.putFloat(j + EXCESS, eq + delta);
+                    e -= delta;
+                    if (eq <= 0) {
+                        if (q >= lo && q < hi) {
+                            queue.add(q - lo);
+                        }
+                        else {
+                            regionActive[q / regionSize] = true;
+                        }
+                    }
+                }
+                if (e <= 0) {
+                    break;
+                }
+
+                // relabel
+                int min = (current.getFloat(i + SINK) > 0) ? 0 : infinite;
+                for (int d = 0; d < directions; d++) {
+                    int q = neighbour(x, y, z, u, d);
+                    if (q >= 0 && current.getFloat(i + CAPACITIES + 4 * d) > 0) {
+                        min = Math.min(min, buffer(q).getInt(position(q) + LABEL));
+                    }
+                }
+                h = Math.min(min + 1, infinite);
+                relabels++;
+                if (h == infinite) {
+                    break;
+                }
+            }
+            current.putFloat(i + EXCESS, e);
+            current.putInt(i + LABEL, h);
+        }
+    }
+
+    /**
+     * Marks the pixels reached in the residual graph from the pixels with
+     * excess, sweeping over the regions until no new pixel is found in a
+     * region already swept.
+     */
+    private void findCut() {
+        cut = new BitSet(n);
+        boolean[] dirty = new boolean[regions];
+        Arrays.fill(dirty, true);
+        region = -1;
+        sweep = 1;
+        for (int r = nextRegion(dirty); r >= 0; r = nextRegion(dirty)) {
+            load(r);
+            dirty[r] = false;
+
+            queue.clear();
+            for (int p = lo; p < hi; p++) {
+                if (cut.get(p) || current.getFloat((p - lo) * recordSize + EXCESS) > 0) {
+                    cut.set(p);
+                    queue.add(p - lo);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int p = lo + queue.poll();
+                int i = (p - lo) * recordSize;
+                int x = p % width;
+                int y = p / width % height;
+                int z = p / width / height;
+                for (int d = 0; d < directions; d++) {
+                    int q = neighbour(x, y, z, p, d);
+                    if (q >= 0 && !cut.get(q) && current.getFloat(i + CAPACITIES + 4 * d) > 0) {
+                        cut.set(q);
+                        if (q >= lo && q < hi) {
+                            queue.add(q - lo);
+                        }
+                        else {
+                            dirty[q / regionSize] = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isSourceSide(int p) {
+        maxFlow();
+        return cut.get(p);
+    }
+
+    @Override
+    public BitSet sourceSide() {
+        maxFlow();
+        return (BitSet) cut.clone();
+    }
+
+    /**
+     * @return the graph
+     */
+    public MappedGridGraph getGraph() {
+        return graph;
+    }
+}
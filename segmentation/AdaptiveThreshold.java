@@ -0,0 +1,210 @@
+package segmentation;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Local adaptive thresholding methods based on the mean and the standard
+ * deviation of the (2r + 1) x (2r + 1) window around each pixel. The window
+ * statistics are taken from an {@link IntegralImage}, so each pixel costs
+ * O(1) whatever the window size. Windows are clipped at the image borders.
+ * In the binary images, pixels above its local threshold are 255 and the rest
+ * are 0, so dark text on a bright page becomes 0.
+ *
+ * Niblack: <code>T = m + k·s</code>, with k = -0.2 by default.
+ * Sauvola: <code>T = m·(1 + k·(s / R - 1))</code>, with k = 0.5 and R = 128.
+ * Bradley: <code>T = m·(1 - t)</code>, with t = 0.15.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ *
+ * @Article{Sauvola 2000,
+ *    author =   "J. Sauvola and M. Pietikainen",
+ *    title =    "Adaptive document image binarization",
+ *    journal =  "<i>Pattern Recognition</i>",
+ *    year =     "2000",
+ *    volume =   "33",
+ *    pages =    "225-236"
+ *  }
+ *
+ * @Article{Bradley 2007,
+ *    author =   "Derek Bradley and Gerhard Roth",
+ *    title =    "Adaptive Thresholding using the Integral Image",
+ *    journal =  "<i>Journal of Graphics Tools</i>",
+ *    year =     "2007",
+ *    volume =   "12",
+ *    pages =    "13-21"
+ *  }
+ */
+public class AdaptiveThreshold {
+
+    /** Niblack method */
+    private static final int NIBLACK = 0;
+
+    /** Sauvola method */
+    private static final int SAUVOLA = 1;
+
+    /** Bradley method */
+    private static final int BRADLEY = 2;
+
+    /** Image to threshold */
+    private ImageProcessor image;
+
+    /** Radius of the window */
+    private int radius;
+
+    /** Niblack k parameter */
+    private double niblackK = -0.2;
+
+    /** Sauvola k parameter */
+    private double sauvolaK = 0.5;
+
+    /** Sauvola dynamic range of the standard deviation */
+    private double R = 128;
+
+    /** Bradley t parameter */
+    private double t = 0.15;
+
+    /** Number of threads */
+    private int threads;
+
+    /** Integral images of the current image, built on demand */
+    private IntegralImage integral;
+
+    /**
+     * Creates a new instance of AdaptiveThreshold
+     *
+     * @param image an 8-bit, 16-bit or float <code>ImageProcessor</code>
+     * @param radius the radius r of the (2r + 1) x (2r + 1) window
+     */
+    public AdaptiveThreshold(ImageProcessor image, int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Radius must be positive");
+        }
+        this.image = image;
+        this.radius = radius;
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return the Niblack binary image
+     */
+    public ImageProcessor niblack() {
+        return binarize(NIBLACK);
+    }
+
+    /**
+     * @return the Sauvola binary image
+     */
+    public ImageProcessor sauvola() {
+        return binarize(SAUVOLA);
+    }
+
+    /**
+     * @return the Bradley binary image
+     */
+    public ImageProcessor bradley() {
+        return binarize(BRADLEY);
+    }
+
+    /**
+     * Thresholds every pixel with the given method, in parallel row bands.
+     */
+    private ImageProcessor binarize(final int method) {
+        // Bradley needs only the means, the squares are built for the variance
+        boolean squares = method != BRADLEY;
+        if (integral == null || (squares && !integral.hasSquares())) {
+            integral = new IntegralImage(image, threads, squares);
+        }
+        final IntegralImage S = integral;
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final byte[] binary = new byte[width * height];
+        final int r = radius;
+
+        IntegralImage.parallel(height, threads, new IntegralImage.Range() {
+
+            @Override
+            void run(int y0, int y1) {
+                for (int y = y0; y < y1; y++) {
+                    int top = Math.max(0, y - r);
+                    int bottom = Math.min(height, y + r + 1);
+                    for (int x = 0; x < width; x++) {
+                        int left = Math.max(0, x - r);
+                        int right = Math.min(width, x + r + 1);
+                        double m = S.mean(left, top, right, bottom);
+
+                        double T;
+                        switch (method) {
+                            case NIBLACK:
+                                T = m + niblackK * Math.sqrt(S.variance(left, top, right, bottom));
+                                break;
+                            case SAUVOLA:
+                                double s = Math.sqrt(S.variance(left, top, right, bottom));
+                                T = m * (1 + sauvolaK * ((s / R) - 1));
+                                break;
+                            default:
+                                T = m * (1 - t);
+                                break;
+                        }
+                        int i = y * width + x;
+                        binary[i] = (image.getf(i) > T) ? (byte) 255 : (byte) 0;
+                    }
+                }
+            }
+        });
+
+        return new ByteProcessor(width, height, binary);
+    }
+
+    /**
+     * @param k the Niblack k parameter
+     */
+    public void setNiblackK(double k) {
+        this.niblackK = k;
+    }
+
+    /**
+     * @param k the Sauvola k parameter
+     * @param R the Sauvola dynamic range of the standard deviation, 128 for
+     * 8-bit images
+     */
+    public void setSauvola(double k, double R) {
+        this.sauvolaK = k;
+        this.R = R;
+    }
+
+    /**
+     * @param t the Bradley t parameter, the fraction below the local mean
+     */
+    public void setBradleyT(double t) {
+        this.t = t;
+    }
+
+    /**
+     * @param radius the radius of the window
+     */
+    public void setRadius(int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Radius must be positive");
+        }
+        this.radius = radius;
+    }
+
+    /**
+     * @param image the image to set
+     */
+    public void setImage(ImageProcessor image) {
+        this.image = image;
+        this.integral = null;
+    }
+
+    /**
+     * @param threads the number of threads to use
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+}
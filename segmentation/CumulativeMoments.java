@@ -0,0 +1,182 @@
+package segmentation;
+
+/**
+ * Cumulative zero and first order moments of a histogram. Once built, the
+ * class probabilities w0, w1, the class means m0, m1 and the between class
+ * variance of any threshold K are computed in constant time. The classes are
+ * defined as C0 = [0, K) and C1 = [K, L) where L is the histogram length.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class CumulativeMoments {
+
+    /** P[K] = sum_{j < K} p(j) */
+    private final double[] P;
+
+    /** M[K] = sum_{j < K} j·p(j) */
+    private final double[] M;
+
+    /** Total count of the histogram */
+    private final double total;
+
+    /**
+     * Builds the cumulative tables of an integer histogram.
+     *
+     * @param histogram the histogram
+     */
+    public CumulativeMoments(int[] histogram) {
+        this(histogram, 0, histogram.length);
+    }
+
+    /**
+     * Builds the cumulative tables of a part of an integer histogram, starting
+     * in offset. Useful for histogram tables that hold several histograms one
+     * after another.
+     *
+     * @param histogram the histogram table
+     * @param offset the first bin of the histogram
+     * @param length the number of bins L
+     */
+    public CumulativeMoments(int[] histogram, int offset, int length) {
+        this.P = new double[length + 1];
+        this.M = new double[length + 1];
+
+        long n = 0;
+        for (int j = 0; j < length; j++) {
+            n += histogram[offset + j];
+        }
+        this.total = n;
+
+        double norm = (n > 0) ? 1.0 / n : 0;
+        for (int j = 0; j < length; j++) {
+            double p = histogram[offset + j] * norm;
+            P[j + 1] = P[j] + p;
+            M[j + 1] = M[j] + j * p;
+        }
+    }
+
+    /**
+     * Builds the cumulative tables of a histogram with real valued counts,
+     * such as weighted or decayed histograms.
+     *
+     * @param histogram the histogram
+     */
+    public CumulativeMoments(double[] histogram) {
+        int length = histogram.length;
+        this.P = new double[length + 1];
+        this.M = new double[length + 1];
+
+        double n = 0;
+        for (int j = 0; j < length; j++) {
+            n += histogram[j];
+        }
+        this.total = n;
+
+        double norm = (n > 0) ? 1.0 / n : 0;
+        for (int j = 0; j < length; j++) {
+            double p = histogram[j] * norm;
+            P[j + 1] = P[j] + p;
+            M[j + 1] = M[j] + j * p;
+        }
+    }
+
+    /**
+     * @return the number of bins L
+     */
+    public int length() {
+        return P.length - 1;
+    }
+
+    /**
+     * @return the total count of the histogram
+     */
+    public double total() {
+        return total;
+    }
+
+    /**
+     * @return the probability of the class C0 = [0, K)
+     */
+    public double w0(int K) {
+        return P[K];
+    }
+
+    /**
+     * @return the probability of the class C1 = [K, L)
+     */
+    public double w1(int K) {
+        return P[P.length - 1] - P[K];
+    }
+
+    /**
+     * @return the mean of the class C0 = [0, K), or 0 if the class is empty
+     */
+    public double m0(int K) {
+        double w0 = P[K];
+        return (w0 > 0) ? M[K] / w0 : 0;
+    }
+
+    /**
+     * @return the mean of the class C1 = [K, L), or 0 if the class is empty
+     */
+    public double m1(int K) {
+        double w1 = w1(K);
+        return (w1 > 0) ? (M[M.length - 1] - M[K]) / w1 : 0;
+    }
+
+    /**
+     * @return the total mean of the histogram
+     */
+    public double mean() {
+        return M[M.length - 1];
+    }
+
+    /**
+     * @return the probability of the interval [a, b)
+     */
+    public double w(int a, int b) {
+        return P[b] - P[a];
+    }
+
+    /**
+     * @return the first order moment of the interval [a, b)
+     */
+    public double mu(int a, int b) {
+        return M[b] - M[a];
+    }
+
+    /**
+     * The between class variance for the threshold K:
+     * <code>s^2(K) = (mT·w0 - M(K))^2 / (w0·w1)</code>
+     *
+     * @return the between class variance, 0 if one of the classes is empty
+     */
+    public double betweenClassVariance(int K) {
+        double w0 = P[K];
+        double w1 = w1(K);
+        if (w0 <= 0 || w1 <= 0) {
+            return 0;
+        }
+        double d = mean() * w0 - M[K];
+        return (d * d) / (w0 * w1);
+    }
+
+    /**
+     * Exhaustive search of the threshold K maximizing the between class
+     * variance, in O(L).
+     *
+     * @return the threshold K, the first value of the class C1
+     */
+    public int maxVarianceThreshold() {
+        int best = 0;
+        double max = -1;
+        for (int K = 1; K < P.length - 1; K++) {
+            double s = betweenClassVariance(K);
+            if (s > max) {
+                max = s;
+                best = K;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,170 @@
+package segmentation;
+
+import ij.process.ImageProcessor;
+
+/**
+ * An immutable image histogram with its binning and the range of the pixel
+ * values. A pixel value v falls in the bin <code>(v - min) / binWidth</code>,
+ * clamped to the histogram length. Built by {@link HistogramBuilder}.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class Histogram {
+
+    /** Counts of each bin */
+    private final int[] counts;
+
+    /** Value of the lower edge of the first bin */
+    private final double origin;
+
+    /** Width of each bin in pixel values */
+    private final double binWidth;
+
+    /** Minimum pixel value */
+    private final double min;
+
+    /** Maximum pixel value */
+    private final double max;
+
+    /** Total number of pixels counted */
+    private final long N;
+
+    /** True if the pixel values are whole numbers, as in 8 and 16 bit images */
+    private final boolean whole;
+
+    /**
+     * Creates a new histogram.
+     *
+     * @param counts counts of each bin, the array is not copied
+     * @param origin value of the lower edge of the first bin
+     * @param binWidth width of each bin
+     * @param min the minimum pixel value
+     * @param max the maximum pixel value
+     * @param N number of pixels counted
+     */
+    public Histogram(int[] counts, double origin, double binWidth, double min, double max, long N) {
+        this(counts, origin, binWidth, min, max, N, false);
+    }
+
+    /**
+     * Creates a new histogram.
+     *
+     * @param counts counts of each bin, the array is not copied
+     * @param origin value of the lower edge of the first bin
+     * @param binWidth width of each bin
+     * @param min the minimum pixel value
+     * @param max the maximum pixel value
+     * @param N number of pixels counted
+     * @param whole true if the pixel values are whole numbers
+     */
+    public Histogram(int[] counts, double origin, double binWidth, double min, double max, long N,
+            boolean whole) {
+        this.counts = counts;
+        this.origin = origin;
+        this.binWidth = binWidth;
+        this.min = min;
+        this.max = max;
+        this.N = N;
+        this.whole = whole;
+    }
+
+    /**
+     * @return the bin of the given pixel value
+     */
+    public int bin(double v) {
+        int b = (int) ((v - origin) / binWidth);
+        return (b < 0) ? 0 : (b >= counts.length ? counts.length - 1 : b);
+    }
+
+    /**
+     * @return the pixel value of the lower edge of the given bin
+     */
+    public double value(int bin) {
+        return origin + bin * binWidth;
+    }
+
+    /**
+     * The largest pixel value that falls in the given bin or below it, so
+     * the pixels greater than it fall in the next bins. For whole pixel
+     * values it is a whole number, the last level of the bin.
+     *
+     * @param bin a bin
+     * @return the largest pixel value of the bin
+     */
+    public double lastValue(int bin) {
+        if (bin >= counts.length - 1) {
+            return max;
+        }
+        double edge = value(bin + 1);
+        return whole ? Math.ceil(edge) - 1 : Math.nextAfter(edge, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Maps every pixel of the image to its bin. The histogram must have at
+     * most 256 bins.
+     *
+     * @param ip the image of this histogram
+     * @return the bin of each pixel, as unsigned bytes
+     */
+    public byte[] quantize(ImageProcessor ip) {
+        if (counts.length > 256) {
+            throw new IllegalArgumentException("Only histograms up to 256 bins can be quantized");
+        }
+        int N = ip.getWidth() * ip.getHeight();
+        byte[] levels = new byte[N];
+        for (int i = 0; i < N; i++) {
+            levels[i] = (byte) bin(ip.getf(i));
+        }
+        return levels;
+    }
+
+    /**
+     * @return the cumulative moments of this histogram
+     */
+    public CumulativeMoments moments() {
+        return new CumulativeMoments(counts);
+    }
+
+    /**
+     * @return the counts of each bin. The array is shared, it must not be
+     * modified.
+     */
+    public int[] counts() {
+        return counts;
+    }
+
+    /**
+     * @return the number of bins
+     */
+    public int length() {
+        return counts.length;
+    }
+
+    /**
+     * @return the bin width
+     */
+    public double binWidth() {
+        return binWidth;
+    }
+
+    /**
+     * @return the minimum pixel value
+     */
+    public double min() {
+        return min;
+    }
+
+    /**
+     * @return the maximum pixel value
+     */
+    public double max() {
+        return max;
+    }
+
+    /**
+     * @return the number of pixels counted
+     */
+    public long total() {
+        return N;
+    }
+}
@@ -0,0 +1,553 @@
+package segmentation;
+
+import ij.process.ImageProcessor;
+import java.util.ArrayList;
+import util.Workers;
+
+/**
+ * Builds a {@link Histogram} together with the minimum and maximum pixel
+ * values of an image in parallel. The image is splitted in stripes, every
+ * thread counts its stripe in a private histogram and the stripe histograms
+ * are merged at the end.
+ *
+ * 8-bit and 16-bit images are counted in its native levels in one pass, the
+ * minimum and maximum are taken from the merged counts and the native counts
+ * are rebinned to the configured number of bins. By default the histograms
+ * keep the native levels, 256 for 8-bit and 65536 for 16-bit images.
+ *
+ * Float images are binned in 256 bins by default, in a single pass. With a
+ * range given by {@link #setRange(double, double)} the pixels are binned
+ * directly. Otherwise every stripe counts its pixels in a fine histogram
+ * keyed on the top 24 bits of the float values, ordered as the values, and
+ * keeps its minimum and maximum; the merged fine histogram is rebinned
+ * between the minimum and maximum, each fine bucket in the bin of its lowest
+ * value. A fine bucket is 2^-15 of its values wide, so only the pixels that
+ * close to a bin edge may be counted in the bin below.
+ *
+ * {@link #build(ImageProcessor, byte[])} also writes the bin of every pixel,
+ * in the counting pass when the binning is known before reading the image.
+ * Float images without a range and 16-bit images binned between its minimum
+ * and maximum need a second pass for it: over the float pixels, which are
+ * then binned exactly, and over the 16-bit pixels through a table of the
+ * levels.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class HistogramBuilder {
+
+    /** Bits of the fine key of a float value in each block of the fine histogram */
+    private static final int FINE_BITS = 12;
+
+    /** Mask of the position of a fine key in its block */
+    private static final int FINE_MASK = (1 << FINE_BITS) - 1;
+
+    /** Number of bins, 0 for the default of each image type */
+    private int bins;
+
+    /** Number of threads */
+    private int threads;
+
+    /** Lower limit of the binned range, NaN to use the data minimum */
+    private double rangeMin = Double.NaN;
+
+    /** Upper limit of the binned range, NaN to use the data maximum */
+    private double rangeMax = Double.NaN;
+
+    /**
+     * Creates a builder of histograms in the native levels of 8-bit and
+     * 16-bit images, and of 256 bins for float images
+     */
+    public HistogramBuilder() {
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Creates a builder with the given number of bins
+     *
+     * @param bins number of bins. For 8-bit images the 256 levels are grouped
+     * in bins of 256 / bins levels
+     */
+    public HistogramBuilder(int bins) {
+        setBins(bins);
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Builds the histogram of the whole image.
+     *
+     * @param ip an 8-bit, 16-bit or float <code>ImageProcessor</code>
+     * @return the histogram
+     */
+    public Histogram build(ImageProcessor ip) {
+        return build(ip, null);
+    }
+
+    /**
+     * Builds the histogram of the whole image and maps every pixel to its
+     * bin, as {@link Histogram#quantize(ImageProcessor)} does, without
+     * reading the image again. NaN pixels go to the first bin.
+     *
+     * @param ip an 8-bit, 16-bit or float <code>ImageProcessor</code>
+     * @param levels the output bin of each pixel, as unsigned bytes, at least
+     * of the image size. The histogram must have at most 256 bins
+     * @return the histogram
+     */
+    public Histogram build(ImageProcessor ip, byte[] levels) {
+        if (levels != null && levels.length < ip.getWidth() * ip.getHeight()) {
+            throw new IllegalArgumentException("Output buffer is smaller than the image");
+        }
+        Object pixels = ip.getPixels();
+        if (pixels instanceof byte[]) {
+            return integerHistogram((byte[]) pixels, null, 256, levels);
+        }
+        else if (pixels instanceof short[]) {
+            return integerHistogram(null, (short[]) pixels, 65536, levels);
+        }
+        else if (pixels instanceof float[]) {
+            return floatHistogram((float[]) pixels, levels);
+        }
+        else {
+            throw new IllegalArgumentException("Only 8-bit, 16-bit and float images are supported");
+        }
+    }
+
+    /**
+     * Counts 8 or 16 bit pixels in native levels and rebin the merged counts.
+     * The bins of the pixels are written through a table of the levels.
+     */
+    private Histogram integerHistogram(final byte[] bytes, final short[] shorts, final int levels,
+            final byte[] out) {
+        final int N = (bytes != null) ? bytes.length : shorts.length;
+        final int[][] local = new int[stripes(N)][];
+
+        // the binning doesn't depend on the data unless a 16-bit image is
+        // binned between its minimum and maximum
+        boolean known = bytes != null || bins == 0 || (!Double.isNaN(rangeMin) && !Double.isNaN(rangeMax));
+        if (out != null && !known) {
+            checkLevels(bins);
+        }
+        final byte[] table = (out != null && known) ? table(binning(bytes != null, levels, 0, levels - 1, 0, null), levels) : null;
+
+        parallel(N, local.length, new Stripe() {
+
+            @Override
+            void run(int t, int from, int to) {
+                int[] h = new int[levels];
+                if (bytes != null) {
+                    for (int i = from; i < to; i++) {
+                        h[bytes[i] & 0xff]++;
+                    }
+                }
+                else {
+                    for (int i = from; i < to; i++) {
+                        h[shorts[i] & 0xffff]++;
+                    }
+                }
+                if (table != null) {
+                    if (bytes != null) {
+                        for (int i = from; i < to; i++) {
+                            out[i] = table[bytes[i] & 0xff];
+                        }
+                    }
+                    else {
+                        for (int i = from; i < to; i++) {
+                            out[i] = table[shorts[i] & 0xffff];
+                        }
+                    }
+                }
+                local[t] = h;
+            }
+        });
+
+        int[] cnative = merge(local, levels);
+        int lo = 0;
+        while (lo < levels - 1 && cnative[lo] == 0) {
+            lo++;
+        }
+        int hi = levels - 1;
+        while (hi > lo && cnative[hi] == 0) {
+            hi--;
+        }
+
+        Histogram binning = binning(bytes != null, levels, lo, hi, N, cnative);
+        if (out != null && table == null) {
+            final byte[] lut = table(binning, levels);
+            parallel(N, local.length, new Stripe() {
+
+                @Override
+                void run(int t, int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        out[i] = lut[shorts[i] & 0xffff];
+                    }
+                }
+            });
+        }
+
+        if (binning.counts() == cnative) {
+            return binning;
+        }
+        int[] counts = binning.counts();
+        for (int v = lo; v <= hi; v++) {
+            counts[binning.bin(v)] += cnative[v];
+        }
+        return binning;
+    }
+
+    /**
+     * The empty histogram of an 8 or 16 bit image with the given minimum and
+     * maximum levels, or the histogram of the native counts if the binning
+     * keeps the native levels and they are given.
+     */
+    private Histogram binning(boolean bytes, int levels, int lo, int hi, long N, int[] cnative) {
+        int length = (bins > 0) ? bins : levels;
+        double origin;
+        double width;
+        if (bytes) {
+            origin = 0;
+            width = 256.0 / length;
+        }
+        else if (bins == 0) {
+            // one bin per level, in the fixed range if there is one
+            origin = Double.isNaN(rangeMin) ? 0 : Math.max(0, Math.floor(rangeMin));
+            double top = Double.isNaN(rangeMax) ? levels - 1 : Math.min(levels - 1, Math.floor(rangeMax));
+            width = 1;
+            length = (top > origin) ? (int) (top - origin) + 1 : 1;
+        }
+        else {
+            origin = Double.isNaN(rangeMin) ? lo : rangeMin;
+            double top = Double.isNaN(rangeMax) ? hi : rangeMax;
+            width = (top > origin) ? (top - origin) / bins : 1;
+        }
+        if (cnative != null && origin == 0 && width == 1 && length == levels) {
+            return new Histogram(cnative, 0, 1, lo, hi, N, true);
+        }
+        return new Histogram(new int[length], origin, width, lo, hi, N, true);
+    }
+
+    /**
+     * The bin of every native level.
+     */
+    private static byte[] table(Histogram binning, int levels) {
+        checkLevels(binning.length());
+        byte[] table = new byte[levels];
+        for (int v = 0; v < levels; v++) {
+            table[v] = (byte) binning.bin(v);
+        }
+        return table;
+    }
+
+    private static void checkLevels(int length) {
+        if (length > 256) {
+            throw new IllegalArgumentException("Only histograms up to 256 bins can be quantized");
+        }
+    }
+
+    /**
+     * Bins float pixels, NaN pixels are not counted.
+     */
+    private Histogram floatHistogram(final float[] pixels, byte[] out) {
+        final int bins = (this.bins > 0) ? this.bins : 256;
+        if (!Double.isNaN(rangeMin) && !Double.isNaN(rangeMax)) {
+            return binFloats(pixels, out, bins, rangeMin, (rangeMax > rangeMin) ? (rangeMax - rangeMin) / bins : 1);
+        }
+        if (out == null) {
+            return fineFloats(pixels, bins);
+        }
+
+        // the bins of the pixels need the minimum and maximum before the
+        // pixels are binned
+        final int N = pixels.length;
+        final int n = stripes(N);
+        final double[] localMin = new double[n];
+        final double[] localMax = new double[n];
+        parallel(N, n, new Stripe() {
+
+            @Override
+            void run(int t, int from, int to) {
+                float lo = Float.MAX_VALUE;
+                float hi = -Float.MAX_VALUE;
+                for (int i = from; i < to; i++) {
+                    float v = pixels[i];
+                    lo = (v < lo) ? v : lo;
+                    hi = (v > hi) ? v : hi;
+                }
+                localMin[t] = lo;
+                localMax[t] = hi;
+            }
+        });
+        double lo = Double.MAX_VALUE;
+        double hi = -Double.MAX_VALUE;
+        for (int t = 0; t < n; t++) {
+            lo = Math.min(lo, localMin[t]);
+            hi = Math.max(hi, localMax[t]);
+        }
+        return binFloats(pixels, out, bins, (lo <= hi) ? lo : 0, (hi > lo) ? (hi - lo) / bins : 1);
+    }
+
+    /**
+     * Bins float pixels with a known binning and writes the bin of every
+     * pixel if out isn't null.
+     */
+    private Histogram binFloats(final float[] pixels, final byte[] out, final int bins,
+            final double origin, final double width) {
+        if (out != null) {
+            checkLevels(bins);
+        }
+        final int N = pixels.length;
+        final int n = stripes(N);
+        final int[][] local = new int[n][];
+        final double[] localMin = new double[n];
+        final double[] localMax = new double[n];
+        final long[] localCount = new long[n];
+
+        parallel(N, n, new Stripe() {
+
+            @Override
+            void run(int t, int from, int to) {
+                int[] h = new int[bins];
+                float lo = Float.MAX_VALUE;
+                float hi = -Float.MAX_VALUE;
+                long count = 0;
+                for (int i = from; i < to; i++) {
+                    float v = pixels[i];
+                    if (v != v) {
+                        if (out != null) {
+                            out[i] = 0;
+                        }
+                        continue;
+                    }
+                    lo = (v < lo) ? v : lo;
+                    hi = (v > hi) ? v : hi;
+                    int b = (int) ((v - origin) / width);
+                    b = (b < 0) ? 0 : (b >= bins ? bins - 1 : b);
+                    h[b]++;
+                    if (out != null) {
+                        out[i] = (byte) b;
+                    }
+                    count++;
+                }
+                local[t] = h;
+                localMin[t] = lo;
+                localMax[t] = hi;
+                localCount[t] = count;
+            }
+        });
+
+        double lo = Double.MAX_VALUE;
+        double hi = -Double.MAX_VALUE;
+        long count = 0;
+        for (int t = 0; t < n; t++) {
+            lo = Math.min(lo, localMin[t]);
+            hi = Math.max(hi, localMax[t]);
+            count += localCount[t];
+        }
+        if (count == 0) {
+            lo = 0;
+            hi = 0;
+        }
+        return new Histogram(merge(local, bins), origin, width, lo, hi, count);
+    }
+
+    /**
+     * Bins float pixels in a single pass, through a fine histogram of each
+     * stripe rebinned after the merge. The fine histograms are splitted in
+     * blocks allocated when a value falls in them, so a stripe only pays for
+     * the orders of magnitude of its values.
+     */
+    private Histogram fineFloats(final float[] pixels, int bins) {
+        final int N = pixels.length;
+        final int n = stripes(N);
+        final int[][][] local = new int[n][][];
+        final double[] localMin = new double[n];
+        final double[] localMax = new double[n];
+        final long[] localCount = new long[n];
+
+        parallel(N, n, new Stripe() {
+
+            @Override
+            void run(int t, int from, int to) {
+                int[][] fine = new int[1 << (24 - FINE_BITS)][];
+                float lo = Float.MAX_VALUE;
+                float hi = -Float.MAX_VALUE;
+                long count = 0;
+                for (int i = from; i < to; i++) {
+                    float v = pixels[i];
+                    if (v != v) {
+                        continue;
+                    }
+                    lo = (v < lo) ? v : lo;
+                    hi = (v > hi) ? v : hi;
+                    int key = fineKey(v);
+                    int[] block = fine[key >>> FINE_BITS];
+                    if (block == null) {
+                        block = new int[1 << FINE_BITS];
+                        fine[key >>> FINE_BITS] = block;
+                    }
+                    block[key & FINE_MASK]++;
+                    count++;
+                }
+                local[t] = fine;
+                localMin[t] = lo;
+                localMax[t] = hi;
+                localCount[t] = count;
+            }
+        });
+
+        int[][] fine = local[0];
+        for (int t = 1; t < n; t++) {
+            for (int b = 0; b < fine.length; b++) {
+                int[] l = local[t][b];
+                if (l == null) {
+                    continue;
+                }
+                if (fine[b] == null) {
+                    fine[b] = l;
+                }
+                else {
+                    for (int j = 0; j < l.length; j++) {
+                        fine[b][j] += l[j];
+                    }
+                }
+            }
+        }
+
+        double lo = Double.MAX_VALUE;
+        double hi = -Double.MAX_VALUE;
+        long count = 0;
+        for (int t = 0; t < n; t++) {
+            lo = Math.min(lo, localMin[t]);
+            hi = Math.max(hi, localMax[t]);
+            count += localCount[t];
+        }
+        if (count == 0) {
+            lo = 0;
+            hi = 0;
+        }
+
+        Histogram h = new Histogram(new int[bins], lo, (hi > lo) ? (hi - lo) / bins : 1, lo, hi, count);
+        int[] counts = h.counts();
+        for (int b = 0; b < fine.length; b++) {
+            if (fine[b] == null) {
+                continue;
+            }
+            for (int j = 0; j <= FINE_MASK; j++) {
+                if (fine[b][j] != 0) {
+                    counts[h.bin(fineValue((b << FINE_BITS) | j))] += fine[b][j];
+                }
+            }
+        }
+        return h;
+    }
+
+    /**
+     * The top 24 bits of a float value as an unsigned key with the order of
+     * the values. The magnitude bits of the negative values are flipped.
+     */
+    private static int fineKey(float v) {
+        int bits = Float.floatToRawIntBits(v);
+        bits ^= (bits >> 31) & 0x7fffffff;
+        return (bits ^ 0x80000000) >>> 8;
+    }
+
+    /**
+     * The lowest float value of a fine key.
+     */
+    private static float fineValue(int key) {
+        int bits = (key << 8) ^ 0x80000000;
+        bits ^= (bits >> 31) & 0x7fffffff;
+        return Float.intBitsToFloat(bits);
+    }
+
+    /**
+     * Adds the stripe histograms in the first one.
+     */
+    private static int[] merge(int[][] local, int length) {
+        int[] h = local[0];
+        for (int t = 1; t < local.length; t++) {
+            int[] l = local[t];
+            for (int j = 0; j < length; j++) {
+                h[j] += l[j];
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Number of stripes for N pixels, small images are not splitted in more
+     * stripes than it's worth.
+     */
+    private int stripes(int N) {
+        return Math.max(1, Math.min(threads, N / 65536));
+    }
+
+    /**
+     * The work on the pixels [from, to) of the stripe t
+     */
+    private abstract static class Stripe {
+
+        abstract void run(int t, int from, int to);
+    }
+
+    /**
+     * Runs the stripe work over N pixels splitted in n stripes and waits for
+     * all of them. The last stripe runs on the calling thread.
+     */
+    private static void parallel(final int N, int n, final Stripe stripe) {
+        final int chunk = (N + n - 1) / n;
+        ArrayList<Runnable> jobs = new ArrayList<Runnable>(n);
+        for (int t = 0; t < n; t++) {
+            final int id = t;
+            jobs.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    stripe.run(id, Math.min(N, id * chunk), Math.min(N, (id + 1) * chunk));
+                }
+            });
+        }
+        Workers.run(jobs);
+    }
+
+    /**
+     * @param bins the number of bins
+     */
+    public void setBins(int bins) {
+        if (bins < 2) {
+            throw new IllegalArgumentException("At least two bins are needed");
+        }
+        this.bins = bins;
+    }
+
+    /**
+     * Fix the binned range for 16-bit and float images. With a fixed range,
+     * float images are counted in a single pass.
+     *
+     * @param min lower limit of the first bin
+     * @param max upper limit of the last bin
+     */
+    public void setRange(double min, double max) {
+        if (!(max >= min)) {
+            throw new IllegalArgumentException("Invalid range [" + min + ", " + max + "]");
+        }
+        this.rangeMin = min;
+        this.rangeMax = max;
+    }
+
+    /**
+     * Removes a fixed range, the data range is used.
+     */
+    public void resetRange() {
+        this.rangeMin = Double.NaN;
+        this.rangeMax = Double.NaN;
+    }
+
+    /**
+     * @param threads the number of threads to use
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+}
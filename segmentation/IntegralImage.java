@@ -0,0 +1,298 @@
+package segmentation;
+
+import ij.process.ImageProcessor;
+import java.util.ArrayList;
+import util.Workers;
+
+/**
+ * Summed area tables of an image and of its squared values. The sum, mean and
+ * variance of any rectangular window are then computed in O(1), whatever the
+ * window size. The squared table is needed only for the variance and can be
+ * left out, halving the memory. Tables have one extra zero row and column, the entry (x, y)
+ * holds the sum of the pixels in [0, x) x [0, y). 8-bit and 16-bit images are
+ * accumulated in exact <code>long</code> tables, float images in
+ * <code>double</code> tables.
+ *
+ * The prefix sums are computed in parallel in two passes: first every row in
+ * row bands, then every column in column bands.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class IntegralImage {
+
+    /** Width of the image */
+    private final int width;
+
+    /** Height of the image */
+    private final int height;
+
+    /** Width of the tables, width + 1 */
+    private final int stride;
+
+    /** Integral image of integer images */
+    private long[] lsum;
+
+    /** Squared integral image of integer images */
+    private long[] lsqsum;
+
+    /** Integral image of float images */
+    private double[] dsum;
+
+    /** Squared integral image of float images */
+    private double[] dsqsum;
+
+    /**
+     * Builds the integral and squared integral images.
+     *
+     * @param ip an 8-bit, 16-bit or float <code>ImageProcessor</code>
+     */
+    public IntegralImage(ImageProcessor ip) {
+        this(ip, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Builds the integral and squared integral images.
+     *
+     * @param ip an 8-bit, 16-bit or float <code>ImageProcessor</code>
+     * @param threads number of threads to use
+     */
+    public IntegralImage(ImageProcessor ip, int threads) {
+        this(ip, threads, true);
+    }
+
+    /**
+     * Builds the integral image, and the squared integral image if asked.
+     *
+     * @param ip an 8-bit, 16-bit or float <code>ImageProcessor</code>
+     * @param threads number of threads to use
+     * @param squares true to build the squared integral image, needed for
+     * the variance
+     */
+    public IntegralImage(ImageProcessor ip, int threads, final boolean squares) {
+        this.width = ip.getWidth();
+        this.height = ip.getHeight();
+        this.stride = width + 1;
+
+        final Object pixels = ip.getPixels();
+        final boolean integer = (pixels instanceof byte[]) || (pixels instanceof short[]);
+        if (!integer && !(pixels instanceof float[])) {
+            throw new IllegalArgumentException("Only 8-bit, 16-bit and float images are supported");
+        }
+        final int size = stride * (height + 1);
+        if (integer) {
+            lsum = new long[size];
+            lsqsum = squares ? new long[size] : null;
+        }
+        else {
+            dsum = new double[size];
+            dsqsum = squares ? new double[size] : null;
+        }
+
+        // prefix sums along the rows
+        parallel(height, threads, new Range() {
+
+            @Override
+            void run(int y0, int y1) {
+                for (int y = y0; y < y1; y++) {
+                    int src = y * width;
+                    int dst = (y + 1) * stride + 1;
+                    if (integer) {
+                        long s = 0;
+                        long s2 = 0;
+                        for (int x = 0; x < width; x++) {
+                            long v = (pixels instanceof byte[])
+                                    ? ((byte[]) pixels)[src + x] & 0xff
+                                    : ((short[]) pixels)[src + x] & 0xffff;
+                            s += v;
+                            lsum[dst + x] = s;
+                            if (squares) {
+                                s2 += v * v;
+                                lsqsum[dst + x] = s2;
+                            }
+                        }
+                    }
+                    else {
+                        float[] p = (float[]) pixels;
+                        double s = 0;
+                        double s2 = 0;
+                        for (int x = 0; x < width; x++) {
+                            double v = p[src + x];
+                            s += v;
+                            dsum[dst + x] = s;
+                            if (squares) {
+                                s2 += v * v;
+                                dsqsum[dst + x] = s2;
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        // prefix sums along the columns
+        parallel(stride, threads, new Range() {
+
+            @Override
+            void run(int x0, int x1) {
+                for (int y = 2; y <= height; y++) {
+                    int row = y * stride;
+                    int up = row - stride;
+                    if (integer) {
+                        for (int x = x0; x < x1; x++) {
+                            lsum[row + x] += lsum[up + x];
+                        }
+                        if (squares) {
+                            for (int x = x0; x < x1; x++) {
+                                lsqsum[row + x] += lsqsum[up + x];
+                            }
+                        }
+                    }
+                    else {
+                        for (int x = x0; x < x1; x++) {
+                            dsum[row + x] += dsum[up + x];
+                        }
+                        if (squares) {
+                            for (int x = x0; x < x1; x++) {
+                                dsqsum[row + x] += dsqsum[up + x];
+                            }
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Sum of the pixels in the window [x0, x1) x [y0, y1)
+     */
+    public double sum(int x0, int y0, int x1, int y1) {
+        int a = y0 * stride + x0;
+        int b = y0 * stride + x1;
+        int c = y1 * stride + x0;
+        int d = y1 * stride + x1;
+        if (lsum != null) {
+            return lsum[d] - lsum[b] - lsum[c] + lsum[a];
+        }
+        return dsum[d] - dsum[b] - dsum[c] + dsum[a];
+    }
+
+    /**
+     * Sum of the squared pixels in the window [x0, x1) x [y0, y1)
+     *
+     * @throws IllegalStateException if the squared integral image wasn't built
+     */
+    public double squaredSum(int x0, int y0, int x1, int y1) {
+        if (!hasSquares()) {
+            throw new IllegalStateException("The squared integral image wasn't built");
+        }
+        int a = y0 * stride + x0;
+        int b = y0 * stride + x1;
+        int c = y1 * stride + x0;
+        int d = y1 * stride + x1;
+        if (lsqsum != null) {
+            return lsqsum[d] - lsqsum[b] - lsqsum[c] + lsqsum[a];
+        }
+        return dsqsum[d] - dsqsum[b] - dsqsum[c] + dsqsum[a];
+    }
+
+    /**
+     * Mean of the pixels in the window [x0, x1) x [y0, y1)
+     */
+    public double mean(int x0, int y0, int x1, int y1) {
+        return sum(x0, y0, x1, y1) / ((x1 - x0) * (y1 - y0));
+    }
+
+    /**
+     * Variance of the pixels in the window [x0, x1) x [y0, y1)
+     *
+     * @throws IllegalStateException if the squared integral image wasn't built
+     */
+    public double variance(int x0, int y0, int x1, int y1) {
+        double n = (x1 - x0) * (y1 - y0);
+        double m = sum(x0, y0, x1, y1) / n;
+        double v = squaredSum(x0, y0, x1, y1) / n - m * m;
+        return (v > 0) ? v : 0;
+    }
+
+    /**
+     * @return true if the squared integral image was built
+     */
+    public boolean hasSquares() {
+        return lsqsum != null || dsqsum != null;
+    }
+
+    /**
+     * @return the integral image of an 8-bit or 16-bit image, null for float
+     * images
+     */
+    public long[] getLongSum() {
+        return lsum;
+    }
+
+    /**
+     * @return the squared integral image of an 8-bit or 16-bit image, null for
+     * float images or if it wasn't built
+     */
+    public long[] getLongSquaredSum() {
+        return lsqsum;
+    }
+
+    /**
+     * @return the integral image of a float image, null for integer images
+     */
+    public double[] getDoubleSum() {
+        return dsum;
+    }
+
+    /**
+     * @return the squared integral image of a float image, null for integer
+     * images or if it wasn't built
+     */
+    public double[] getDoubleSquaredSum() {
+        return dsqsum;
+    }
+
+    /**
+     * @return the width of the image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * A work over the range [from, to)
+     */
+    abstract static class Range {
+
+        abstract void run(int from, int to);
+    }
+
+    /**
+     * Splits [0, n) in contiguous ranges, one for each thread, and waits for
+     * all of them.
+     */
+    static void parallel(int n, int threads, final Range range) {
+        int t = Math.max(1, Math.min(threads, n));
+        final int chunk = (n + t - 1) / t;
+        ArrayList<Runnable> jobs = new ArrayList<Runnable>(t);
+        for (int i = 0; i < t; i++) {
+            final int from = Math.min(n, i * chunk);
+            final int to = Math.min(n, from + chunk);
+            jobs.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    range.run(from, to);
+                }
+            });
+        }
+        Workers.run(jobs);
+    }
+}
@@ -0,0 +1,282 @@
+package segmentation;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import util.Workers;
+
+/**
+ * Adaptive local Otsu thresholding. Every pixel is thresholded with the Otsu
+ * threshold of the square window of radius r centered on it. The window
+ * histogram is kept up to date as in Perreault and Hebert: one histogram per
+ * column holds the 2r + 1 pixels of the window rows, moving the window one
+ * pixel right adds the incoming column histogram and removes the outgoing
+ * one, and moving one row down updates every column histogram with one pixel
+ * in and one pixel out. The cost per pixel is independent of the radius. The
+ * image is splitted in row bands that are processed in parallel.
+ *
+ * 16-bit and float images are quantized to 256 levels between its minimum and
+ * maximum before thresholding.
+ *
+ * A window with a single gray level has no two classes to split: its
+ * threshold is the level above it and the pixel goes to the lower class, as
+ * the flat regions of {@link RegionOtsu}. With a minimum contrast, flat
+ * windows take the global threshold as the other low contrast windows.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ *
+ * @Article{Perreault 2007,
+ *    author =   "Simon Perreault and Patrick Hebert",
+ *    title =    "Median Filtering in Constant Time",
+ *    journal =  "<i>IEEE Transactions on Image Processing</i>",
+ *    year =     "2007",
+ *    volume =   "16",
+ *    pages =    "2389-2394"
+ *  }
+ */
+public class LocalOtsu {
+
+    /** Number of gray levels */
+    private static final int L = 256;
+
+    /** Image to threshold */
+    private ImageProcessor image;
+
+    /** Radius of the window */
+    private int radius;
+
+    /**
+     * Minimum gray level range inside a window to use its own threshold,
+     * flat windows use the global Otsu threshold.
+     */
+    private int minContrast = 0;
+
+    /** Number of threads */
+    private int threads;
+
+    /**
+     * Creates a new instance of LocalOtsu
+     *
+     * @param image an <code>ImageProcessor</code> to binarize
+     * @param radius the radius r of the (2r + 1) x (2r + 1) window
+     */
+    public LocalOtsu(ImageProcessor image, int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Radius must be positive");
+        }
+        this.image = image;
+        this.radius = radius;
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Binarize the image, each pixel with the Otsu threshold of its window.
+     *
+     * @return a new <code>ByteProcessor</code>, 255 for pixels in the upper
+     * class of its window and 0 in other case.
+     */
+    public ImageProcessor binarize() {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final byte[] levels = levels();
+        final byte[] binary = new byte[width * height];
+
+        final int global;
+        if (minContrast > 0) {
+            int[] h = new int[L];
+            for (int i = 0; i < levels.length; i++) {
+                h[levels[i] & 0xff]++;
+            }
+            global = new CumulativeMoments(h).maxVarianceThreshold();
+        }
+        else {
+            global = 0;
+        }
+
+        int n = Math.max(1, Math.min(threads, height / (2 * radius + 1)));
+        final int band = (height + n - 1) / n;
+        ArrayList<Runnable> jobs = new ArrayList<Runnable>(n);
+        for (int t = 0; t < n; t++) {
+            final int y0 = t * band;
+            final int y1 = Math.min(height, y0 + band);
+            jobs.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    binarizeBand(levels, binary, width, height, y0, y1, global);
+                }
+            });
+        }
+        Workers.run(jobs);
+
+        return new ByteProcessor(width, height, binary);
+    }
+
+    /**
+     * Thresholds the rows [y0, y1), sliding the window histogram along each
+     * row and the column histograms down the band.
+     */
+    private void binarizeBand(byte[] levels, byte[] binary, int width, int height,
+            int y0, int y1, int global) {
+        int r = radius;
+        int[] columns = new int[width * L];
+        int[] window = new int[L];
+
+        // column histograms of the first row of the band
+        for (int y = Math.max(0, y0 - r); y <= Math.min(height - 1, y0 + r); y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                columns[x * L + (levels[row + x] & 0xff)]++;
+            }
+        }
+
+        for (int y = y0; y < y1; y++) {
+            if (y > y0) {
+                int out = y - r - 1;
+                int in = y + r;
+                if (out >= 0) {
+                    int row = out * width;
+                    for (int x = 0; x < width; x++) {
+                        columns[x * L + (levels[row + x] & 0xff)]--;
+                    }
+                }
+                if (in < height) {
+                    int row = in * width;
+                    for (int x = 0; x < width; x++) {
+                        columns[x * L + (levels[row + x] & 0xff)]++;
+                    }
+                }
+            }
+
+            Arrays.fill(window, 0);
+            for (int x = 0; x <= Math.min(width - 1, r); x++) {
+                add(window, columns, x);
+            }
+
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                if (x > 0) {
+                    if (x + r < width) {
+                        add(window, columns, x + r);
+                    }
+                    if (x - r - 1 >= 0) {
+                        subtract(window, columns, x - r - 1);
+                    }
+                }
+                int th = threshold(window, global);
+                binary[row + x] = ((levels[row + x] & 0xff) >= th) ? (byte) 255 : (byte) 0;
+            }
+        }
+    }
+
+    /**
+     * Otsu threshold of the window histogram, computed with running
+     * cumulative sums in one scan. Returns the global threshold if the gray
+     * level range of the window is less than minContrast, and the level above
+     * the only one of a flat window.
+     */
+    private int threshold(int[] h, int global) {
+        long n = 0;
+        long sum = 0;
+        int lo = -1;
+        int hi = 0;
+        for (int j = 0; j < L; j++) {
+            int c = h[j];
+            if (c != 0) {
+                if (lo < 0) {
+                    lo = j;
+                }
+                hi = j;
+                n += c;
+                sum += (long) j * c;
+            }
+        }
+        if (hi - lo < minContrast || lo == hi) {
+            return (minContrast > 0) ? global : lo + 1;
+        }
+
+        // between class variance scaled by n^2, classes [0, K) and [K, L)
+        double max = -1;
+        int best = lo + 1;
+        long w0 = 0;
+        long m0 = 0;
+        for (int K = lo + 1; K <= hi; K++) {
+            w0 += h[K - 1];
+            m0 += (long) (K - 1) * h[K - 1];
+            long w1 = n - w0;
+            double d = (double) n * m0 - (double) sum * w0;
+            double s = (d * d) / ((double) w0 * w1);
+            if (s > max) {
+                max = s;
+                best = K;
+            }
+        }
+        return best;
+    }
+
+    private static void add(int[] window, int[] columns, int x) {
+        int offset = x * L;
+        for (int j = 0; j < L; j++) {
+            window[j] += columns[offset + j];
+        }
+    }
+
+    private static void subtract(int[] window, int[] columns, int x) {
+        int offset = x * L;
+        for (int j = 0; j < L; j++) {
+            window[j] -= columns[offset + j];
+        }
+    }
+
+    /**
+     * Gray levels of the image, quantized to 256 levels if it's not 8-bit.
+     */
+    private byte[] levels() {
+        Object pixels = image.getPixels();
+        if (pixels instanceof byte[]) {
+            return (byte[]) pixels;
+        }
+
+        byte[] levels = new byte[image.getWidth() * image.getHeight()];
+        new HistogramBuilder(L).build(image, levels);
+        return levels;
+    }
+
+    /**
+     * Windows with a gray level range below minContrast are thresholded with
+     * the global Otsu threshold instead of its own, 0 disables it.
+     *
+     * @param minContrast the minimum gray level range
+     */
+    public void setMinContrast(int minContrast) {
+        this.minContrast = minContrast;
+    }
+
+    /**
+     * @param radius the radius of the window
+     */
+    public void setRadius(int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Radius must be positive");
+        }
+        this.radius = radius;
+    }
+
+    /**
+     * @param image the image to set
+     */
+    public void setImage(ImageProcessor image) {
+        this.image = image;
+    }
+
+    /**
+     * @param threads the number of threads to use
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+}
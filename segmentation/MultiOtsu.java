@@ -0,0 +1,198 @@
+package segmentation;
+
+import ij.process.ImageProcessor;
+
+/**
+ * Multi-level Otsu thresholding. Finds the k thresholds that split the image
+ * histogram in k + 1 classes with maximum between class variance. Maximizing
+ * the between class variance is equivalent to maximizing
+ * <code>sum_c w(c)·m(c)^2</code>, so the cost of every interval [a, b) of the
+ * histogram is precomputed from the cumulative moments in an O(L^2) table and
+ * the optimum is found by dynamic programming in O(k·L^2), instead of the
+ * O(L^k) exhaustive search.
+ *
+ * 8-bit images use their 256 bins histogram, 16-bit and float images are
+ * binned between its minimum and maximum values, see {@link #setBins(int)}.
+ * The histogram is built by {@link HistogramBuilder}.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ *
+ * @Article{Liao 2001,
+ *    author =   "Ping-Sung Liao, Tse-Sheng Chen and Pau-Choo Chung",
+ *    title =    "A Fast Algorithm for Multilevel Thresholding",
+ *    journal =  "<i>Journal of Information Science and Engineering</i>",
+ *    year =     "2001",
+ *    volume =   "17",
+ *    pages =    "713-727"
+ *  }
+ */
+public class MultiOtsu {
+
+    /** Image to threshold */
+    private ImageProcessor image;
+
+    /** Number of thresholds k */
+    private int levels;
+
+    /** Number of histogram bins */
+    private int bins = 256;
+
+    /** Builds the histogram and the pixel range in one parallel pass */
+    private HistogramBuilder builder;
+
+    /**
+     * Creates a new instance of MultiOtsu
+     *
+     * @param image an <code>ImageProcessor</code> to segment
+     * @param levels the number of thresholds k, the image is splitted in k + 1
+     * classes
+     */
+    public MultiOtsu(ImageProcessor image, int levels) {
+        if (levels < 1) {
+            throw new IllegalArgumentException("At least one threshold is needed");
+        }
+        this.image = image;
+        this.levels = levels;
+        this.builder = new HistogramBuilder(bins);
+    }
+
+    /**
+     * Get the optimal thresholds for the image. A pixel with value v belongs
+     * to the class c if <code>t[c - 1] <= v < t[c]</code>. Use
+     * {@link #compute()} to get the labels from the same solve.
+     *
+     * @return the k thresholds in pixel values, in ascending order
+     */
+    public double[] threshold() {
+        Histogram histogram = builder.build(image);
+        return values(histogram, thresholds(histogram.moments(), levels));
+    }
+
+    /**
+     * Segment the image in k + 1 classes. Use {@link #compute()} to get the
+     * thresholds from the same solve.
+     *
+     * @return a new <code>ByteProcessor</code> where each pixel has the label,
+     * from 0 to k, of its class.
+     */
+    public ImageProcessor labels() {
+        return compute().getLabels();
+    }
+
+    /**
+     * Solves the thresholds once and segments the image with them. Up to 256
+     * bins, the bin of every pixel is written while the histogram is built.
+     *
+     * @return the thresholds and the class labels
+     */
+    public MultiOtsuResult compute() {
+        int N = image.getWidth() * image.getHeight();
+        byte[] labels = new byte[N];
+        boolean quantized = bins <= 256;
+        Histogram histogram = quantized ? builder.build(image, labels) : builder.build(image);
+        int[] t = thresholds(histogram.moments(), levels);
+
+        // label of each bin
+        byte[] lut = new byte[histogram.length()];
+        int c = 0;
+        for (int b = 0; b < lut.length; b++) {
+            while (c < t.length && b >= t[c]) {
+                c++;
+            }
+            lut[b] = (byte) c;
+        }
+
+        for (int i = 0; i < N; i++) {
+            labels[i] = lut[quantized ? labels[i] & 0xff : histogram.bin(image.getf(i))];
+        }
+        return new MultiOtsuResult(values(histogram, t), labels, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * @return the pixel values of the threshold bins
+     */
+    private static double[] values(Histogram histogram, int[] t) {
+        double[] values = new double[t.length];
+        for (int i = 0; i < t.length; i++) {
+            values[i] = histogram.value(t[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Solves the k thresholds over the bins of a histogram.
+     *
+     * @param moments the cumulative moments of the histogram
+     * @param k the number of thresholds
+     * @return the k bins where each class C1..Ck starts, in ascending order
+     */
+    public static int[] thresholds(CumulativeMoments moments, int k) {
+        int L = moments.length();
+        int n = k + 1;
+        if (L < n) {
+            throw new IllegalArgumentException("The histogram has less bins than classes");
+        }
+
+        // H[a][b]: cost of the class [a, b)
+        int stride = L + 1;
+        double[] H = new double[stride * stride];
+        for (int a = 0; a < L; a++) {
+            for (int b = a + 1; b <= L; b++) {
+                double w = moments.w(a, b);
+                double mu = moments.mu(a, b);
+                H[a * stride + b] = (w > 0) ? (mu * mu) / w : 0;
+            }
+        }
+
+        // best[c][b]: optimum for c classes covering [0, b)
+        double[][] best = new double[n + 1][stride];
+        int[][] arg = new int[n + 1][stride];
+        for (int b = 1; b <= L; b++) {
+            best[1][b] = H[b];
+        }
+        for (int c = 2; c <= n; c++) {
+            int last = (c == n) ? L : L - (n - c);
+            for (int b = c; b <= last; b++) {
+                double max = Double.NEGATIVE_INFINITY;
+                int argmax = c - 1;
+                for (int a = c - 1; a < b; a++) {
+                    double v = best[c - 1][a] + H[a * stride + b];
+                    if (v > max) {
+                        max = v;
+                        argmax = a;
+                    }
+                }
+                best[c][b] = max;
+                arg[c][b] = argmax;
+            }
+        }
+
+        // backtrack the class boundaries
+        int[] t = new int[k];
+        int b = L;
+        for (int c = n; c > 1; c--) {
+            b = arg[c][b];
+            t[c - 2] = b;
+        }
+        return t;
+    }
+
+    /**
+     * Sets the number of histogram bins, by default 256. For 8-bit images the
+     * gray levels are grouped in bins of 256 / bins levels. The variance table
+     * takes (bins + 1)^2 doubles.
+     *
+     * @param bins the number of bins
+     */
+    public void setBins(int bins) {
+        builder.setBins(bins);
+        this.bins = bins;
+    }
+
+    /**
+     * @param image the image to set
+     */
+    public void setImage(ImageProcessor image) {
+        this.image = image;
+    }
+}
@@ -0,0 +1,51 @@
+package segmentation;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Immutable result of a {@link MultiOtsu} segmentation: the k thresholds and
+ * the image of the class labels, from a single solve. Instances can be
+ * shared freely between threads.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public final class MultiOtsuResult {
+
+    /** The thresholds in pixel values, in ascending order */
+    private final double[] thresholds;
+
+    /** Class label of each pixel */
+    private final byte[] labels;
+
+    /** Image width */
+    private final int width;
+
+    /** Image height */
+    private final int height;
+
+    /**
+     * The arrays are not copied.
+     */
+    MultiOtsuResult(double[] thresholds, byte[] labels, int width, int height) {
+        this.thresholds = thresholds;
+        this.labels = labels;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return the k thresholds in pixel values, in ascending order
+     */
+    public double[] getThresholds() {
+        return thresholds.clone();
+    }
+
+    /**
+     * @return a new <code>ByteProcessor</code> where each pixel has the label,
+     * from 0 to k, of its class.
+     */
+    public ImageProcessor getLabels() {
+        return new ByteProcessor(width, height, labels.clone());
+    }
+}
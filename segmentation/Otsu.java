@@ -1,7 +1,7 @@
 package segmentation;
 
+import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
-import ij.process.ImageStatistics;
 
 /**
  * Class that implements a improved algorithm for otsu thresholding value used
@@ -29,14 +29,8 @@ public class Otsu {
     /** Delta for image */
     private double delta;
 
-    /** An histogram of the image pixel values */
-    private int[] histogram;
-
-    /** The probability of the each value pixel on the image  */
-    private double[] probability;
-
-    /** the total number of pixels on the image */
-    private int N;
+    /** Builds the histogram and the pixel range in one parallel pass */
+    private HistogramBuilder builder;
 
     
     /**
@@ -48,45 +42,195 @@ public class Otsu {
     public Otsu(ImageProcessor image, double delta) {
         this.image = image;
         this.delta = delta;
-        this.N = image.getWidth() * image.getHeight();
+        this.builder = new HistogramBuilder();
     }
 
     /**
      * Get the optimal threshold for image, the image must be one banded image.
-     * @return a <code>double</code> the optimal value for thresholding image
+     * Pixels greater than the threshold are the foreground, as in
+     * {@link #binarize()}.
+     *
+     * @return an <code>int</code> the optimal value for thresholding image,
+     * the last gray level of the background. For float images use
+     * {@link #thresholdValue()}
+     */
+    public int threshold() {
+        return (int) Math.floor(thresholdValue());
+    }
+
+    /**
+     * Get the optimal threshold for image without rounding it to a gray
+     * level, for float images.
+     *
+     * @return the last value of the background
+     */
+    public double thresholdValue() {
+        return compute(image).getThreshold();
+    }
+    
+    /**
+     * Get the threshold that maximizes the between class variance, using an
+     * exhaustive search over all the histogram values. Each candidate costs
+     * O(1) from the cumulative tables.
+     *
+     * @return the last gray level of the background. For float images use
+     * {@link #maxVarianceThresholdValue()}
+     */
+    public int maxVarianceThreshold() {
+        return (int) Math.floor(maxVarianceThresholdValue());
+    }
+
+    /**
+     * Get the threshold that maximizes the between class variance without
+     * rounding it to a gray level, for float images.
+     *
+     * @return the last value of the background
+     */
+    public double maxVarianceThresholdValue() {
+        return computeMaxVariance(image).getThreshold();
+    }
+
+    /**
+     * Computes the threshold of the given image with this Otsu method. This
+     * method keeps no state in this instance, so one configured instance can
+     * be shared by any number of threads.
+     *
+     * @param image the image to threshold
+     * @return the threshold and the statistics of both classes
      */
-    public synchronized int threshold() {
-        this.histogram = image.getHistogram();
-        this.findProbability();
+    public OtsuResult compute(ImageProcessor image) {
+        Histogram h = builder.build(image);
+        CumulativeMoments moments = h.moments();
 
-        ImageStatistics stats = image.getStatistics();
-        int a0 = (int) stats.min;
-        int a2 = (int) stats.max;
+        int a0 = h.bin(h.min());
+        int a2 = h.bin(h.max());
         int a1 = (a0 + a2) / 2;
 
-        int th = check(a0, a1, a2);
+        int th = check(moments, a0, a1, a2);
 
-        return th;
+        return new OtsuResult(h, th);
     }
-    
+
+    /**
+     * Computes the threshold of the given image that maximizes the between
+     * class variance. This method keeps no state in this instance.
+     *
+     * @param image the image to threshold
+     * @return the threshold and the statistics of both classes
+     */
+    public OtsuResult computeMaxVariance(ImageProcessor image) {
+        Histogram h = builder.build(image);
+        // the search gives the first bin of the foreground
+        int K = h.moments().maxVarianceThreshold();
+        return new OtsuResult(h, Math.max(0, K - 1));
+    }
+
     /**
-     * Binarize this image using this Otsu method
+     * Binarize this image using this Otsu method. Pixels with values greater
+     * than the threshold are set to 255 and the rest to 0, as in
+     * {@link #binarize(ImageProcessor, double, byte[])}.
      * 
-     * @return a new <code>ImageProcessor</code> 
+     * @return a new 8-bit <code>ImageProcessor</code> 
      */
     public ImageProcessor binarize() {
-        int threshold = this.threshold();
-        ImageProcessor binary = image.duplicate();
-        binary.threshold(threshold);
-        return binary;
+        byte[] out = new byte[image.getWidth() * image.getHeight()];
+        binarize(image, out);
+        return new ByteProcessor(image.getWidth(), image.getHeight(), out);
+    }
+
+    /**
+     * Binarize the given image into a caller provided buffer, without
+     * duplicating the image. Pixels of the upper class, with values greater
+     * than the threshold, are set to 255 and the rest to 0.
+     *
+     * @param image the image to binarize
+     * @param out the output buffer, at least of the image size
+     * @return the threshold and the statistics of both classes
+     */
+    public OtsuResult binarize(ImageProcessor image, byte[] out) {
+        OtsuResult result = compute(image);
+        binarize(image, result.getThreshold(), out);
+        return result;
+    }
+
+    /**
+     * Binarize the given image with a given threshold into a caller provided
+     * buffer. Pixels with values greater than the threshold are set to 255
+     * and the rest to 0, as <code>ImageProcessor.threshold(int)</code> does.
+     *
+     * @param image the image to binarize
+     * @param threshold the threshold, e.g. from {@link OtsuResult#getThreshold()}
+     * @param out the output buffer, at least of the image size
+     */
+    public static void binarize(ImageProcessor image, double threshold, byte[] out) {
+        int N = image.getWidth() * image.getHeight();
+        if (out.length < N) {
+            throw new IllegalArgumentException("Output buffer is smaller than the image");
+        }
+        Object pixels = image.getPixels();
+        if (pixels instanceof byte[]) {
+            byte[] p = (byte[]) pixels;
+            for (int i = 0; i < N; i++) {
+                out[i] = ((p[i] & 0xff) > threshold) ? (byte) 255 : (byte) 0;
+            }
+        }
+        else {
+            for (int i = 0; i < N; i++) {
+                out[i] = (image.getf(i) > threshold) ? (byte) 255 : (byte) 0;
+            }
+        }
+    }
+
+    /**
+     * Binarize the given image into a 1-bit packed mask. The bit i % 64 of the
+     * word i / 64 is set if the pixel i belongs to the upper class.
+     *
+     * @param image the image to binarize
+     * @param mask the output mask of at least (N + 63) / 64 words, where N is
+     * the number of pixels
+     * @return the threshold and the statistics of both classes
+     */
+    public OtsuResult binarize(ImageProcessor image, long[] mask) {
+        OtsuResult result = compute(image);
+        pack(image, result.getThreshold(), mask);
+        return result;
+    }
+
+    /**
+     * Packs the pixels greater than the threshold in a 1-bit mask.
+     *
+     * @param image the image to binarize
+     * @param threshold the threshold
+     * @param mask the output mask of at least (N + 63) / 64 words
+     */
+    public static void pack(ImageProcessor image, double threshold, long[] mask) {
+        int N = image.getWidth() * image.getHeight();
+        int words = (N + 63) >>> 6;
+        if (mask.length < words) {
+            throw new IllegalArgumentException("Mask is smaller than the image");
+        }
+        Object pixels = image.getPixels();
+        byte[] p = (pixels instanceof byte[]) ? (byte[]) pixels : null;
+        for (int w = 0; w < words; w++) {
+            long word = 0;
+            int base = w << 6;
+            int end = Math.min(N, base + 64);
+            for (int i = base; i < end; i++) {
+                float v = (p != null) ? (p[i] & 0xff) : image.getf(i);
+                if (v > threshold) {
+                    word |= 1L << (i - base);
+                }
+            }
+            mask[w] = word;
+        }
     }
 
     /**
      * make the final checking for a1, if a1 is not correct then make one iteration more
      */
-    private int check(int a0, int a1, int a2) {
-        double f = this.f((int)a1);
-        double f1 = this.f((int)a1 - 1) * this.f((int)a1 + 1);
+    private int check(CumulativeMoments moments, int a0, int a1, int a2) {
+        double f = f(moments, a1);
+        double f1 = f(moments, a1 - 1) * f(moments, a1 + 1);
        
         while ((Math.abs(f) > delta) && (f1 > 0)) {
             if (f >= 0) {
@@ -97,71 +241,36 @@ public class Otsu {
             }
             
             a1 = (a0 + a2) / 2;
-            f = this.f(a1);
-            f1 = this.f(a1 - 1) * this.f(a1 + 1);
+            f = f(moments, a1);
+            f1 = f(moments, a1 - 1) * f(moments, a1 + 1);
         }
         return a1;
     }
 
-    private double f(int x) {
+    private static double f(CumulativeMoments moments, int x) {
+        int L = moments.length();
         if (x < 0) {
             return 0;
-        } else if (x > histogram.length) {
-            return histogram.length;
+        } else if (x > L) {
+            return L;
         } else {
-            double m0 = this.m0(x);
-            double m1 = this.m1(x);
+            double m0 = moments.m0(x);
+            double m1 = moments.m1(x);
             double f = (2 * x) - m0 - m1;
 
             return f;
         }
     }
 
-    private double m0(int K) {
-        double w0 = this.w0(K);
-        double m0 = 0;
-
-        for (int j = 0; j < K; j++) {
-            m0 += (((double) j * probability[j]) / w0);
-        }
-        return m0;
-    }
-
-    private double m1(int K) {
-        double w1 = this.w1(K);
-        double m1 = 0;
-
-        for (int j = K; j < probability.length; j++) {
-            m1 += (((double) j * probability[j]) / w1);
-        }
-        return m1;
-    }
-
-    private double w0(int K) {
-        double w0 = 0;
-        for (int i = 0; i < K; i++) {
-            w0 += probability[i];
-        }
-        return w0;
-    }
-
-    private double w1(int K) {
-        double w1 = 0;
-        for (int i = K; i < histogram.length; i++) {
-            w1 += probability[i];
-        }
-        return w1;
-    }
-
     /**
-     * Return the probability of each pixel value, in the image.
-     * In an array prob[bands][pixelSize]
+     * Sets the number of histogram bins. 8-bit and 16-bit images use their
+     * native levels by default, so thresholds are gray levels, and float
+     * images use 256 bins.
+     *
+     * @param bins the number of bins
      */
-    private void findProbability() {
-        this.probability = new double[histogram.length];
-        for (int j = 0; j < histogram.length; j++) {
-            probability[j] = histogram[j] / (double)N;
-        }
+    public void setBins(int bins) {
+        builder.setBins(bins);
     }
 
     /**
@@ -169,6 +278,5 @@ public class Otsu {
      */
     public void setImage(ImageProcessor image) {
         this.image = image;
-        this.N = image.getWidth() * image.getHeight();
     }
 }
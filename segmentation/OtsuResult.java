@@ -0,0 +1,175 @@
+package segmentation;
+
+/**
+ * Immutable result of an Otsu thresholding: the threshold and the weight,
+ * mean and variance of both classes. The threshold is the last value of the
+ * background class C0, which holds the pixels lower or equal than the
+ * threshold, and the foreground class C1 holds the pixels greater than it,
+ * as in <code>ImageProcessor.threshold(int)</code>. Means, variances and
+ * threshold are given in pixel values. Instances can be shared freely
+ * between threads.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public final class OtsuResult {
+
+    /** Threshold in pixel values */
+    private final double threshold;
+
+    /** Last bin of the background class */
+    private final int bin;
+
+    /** Weight of the background class */
+    private final double w0;
+
+    /** Weight of the foreground class */
+    private final double w1;
+
+    /** Mean of the background class */
+    private final double m0;
+
+    /** Mean of the foreground class */
+    private final double m1;
+
+    /** Variance of the background class */
+    private final double v0;
+
+    /** Variance of the foreground class */
+    private final double v1;
+
+    /** Total variance */
+    private final double total;
+
+    /**
+     * Computes the class statistics of the histogram h with the bins up to K
+     * in the background. Bins are represented by its lower edge value.
+     */
+    OtsuResult(Histogram h, int K) {
+        int[] counts = h.counts();
+        double n0 = 0;
+        double s0 = 0;
+        double q0 = 0;
+        double n1 = 0;
+        double s1 = 0;
+        double q1 = 0;
+        for (int j = 0; j < counts.length; j++) {
+            double c = counts[j];
+            if (c == 0) {
+                continue;
+            }
+            double v = h.value(j);
+            if (j <= K) {
+                n0 += c;
+                s0 += c * v;
+                q0 += c * v * v;
+            }
+            else {
+                n1 += c;
+                s1 += c * v;
+                q1 += c * v * v;
+            }
+        }
+        double n = n0 + n1;
+
+        this.bin = K;
+        this.threshold = h.lastValue(K);
+        this.w0 = (n > 0) ? n0 / n : 0;
+        this.w1 = (n > 0) ? n1 / n : 0;
+        this.m0 = (n0 > 0) ? s0 / n0 : 0;
+        this.m1 = (n1 > 0) ? s1 / n1 : 0;
+        this.v0 = (n0 > 0) ? Math.max(0, q0 / n0 - m0 * m0) : 0;
+        this.v1 = (n1 > 0) ? Math.max(0, q1 / n1 - m1 * m1) : 0;
+
+        double mean = (n > 0) ? (s0 + s1) / n : 0;
+        this.total = (n > 0) ? Math.max(0, (q0 + q1) / n - mean * mean) : 0;
+    }
+
+    /**
+     * @return the threshold, the last value of the background class. For 8
+     * and 16 bit images it is a gray level
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return the histogram bin of the threshold, the last bin of the
+     * background class
+     */
+    public int getBin() {
+        return bin;
+    }
+
+    /**
+     * @return the fraction of pixels in the background class
+     */
+    public double getBackgroundWeight() {
+        return w0;
+    }
+
+    /**
+     * @return the fraction of pixels in the foreground class
+     */
+    public double getForegroundWeight() {
+        return w1;
+    }
+
+    /**
+     * @return the mean of the background class
+     */
+    public double getBackgroundMean() {
+        return m0;
+    }
+
+    /**
+     * @return the mean of the foreground class
+     */
+    public double getForegroundMean() {
+        return m1;
+    }
+
+    /**
+     * @return the variance of the background class
+     */
+    public double getBackgroundVariance() {
+        return v0;
+    }
+
+    /**
+     * @return the variance of the foreground class
+     */
+    public double getForegroundVariance() {
+        return v1;
+    }
+
+    /**
+     * @return the between class variance w0·w1·(m1 - m0)^2
+     */
+    public double getBetweenClassVariance() {
+        double d = m1 - m0;
+        return w0 * w1 * d * d;
+    }
+
+    /**
+     * @return the within class variance w0·v0 + w1·v1
+     */
+    public double getWithinClassVariance() {
+        return w0 * v0 + w1 * v1;
+    }
+
+    /**
+     * Otsu's separability measure, the between class variance over the total
+     * variance, in [0, 1].
+     *
+     * @return the separability, 0 for a constant image
+     */
+    public double getSeparability() {
+        return (total > 0) ? getBetweenClassVariance() / total : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "OtsuResult(threshold = " + threshold + ", m0 = " + m0 + ", m1 = " + m1
+                + ", separability = " + getSeparability() + ")";
+    }
+}
@@ -0,0 +1,292 @@
+package segmentation;
+
+import ij.process.ImageProcessor;
+import java.util.ArrayList;
+import util.Workers;
+
+/**
+ * Otsu thresholding of every region of a label image. The histograms of all
+ * the regions are accumulated in one parallel pass over the image into a
+ * compact table of 256 bins per label present in the label image, each
+ * thread with its own table; then the threshold of every region is solved
+ * from the cumulative moments of its row of the table. The tables of all the
+ * threads are limited to 2^24 bins, so images with many regions use less
+ * threads. Label 0 is taken as background and is not thresholded, its
+ * threshold is NaN, unless {@link #setIgnoreZero(boolean)} is disabled.
+ *
+ * The labels are whole numbers up to 65535, or up to the number of pixels
+ * for larger float label images, since the thresholds are indexed by label.
+ *
+ * 16-bit and float images are quantized to 256 levels between its minimum and
+ * maximum, the thresholds are given in pixel values.
+ *
+ * A region with a single gray level has no two classes to split: its
+ * threshold is the level above it and all its pixels go to the lower class,
+ * as the flat windows of {@link LocalOtsu}.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class RegionOtsu {
+
+    /** Number of gray levels */
+    private static final int L = 256;
+
+    /**
+     * Bins of the tables of all the threads together, the threads are
+     * limited so that their tables fit
+     */
+    private static final int TABLES_SIZE = 1 << 24;
+
+    /** Largest label of 8-bit and 16-bit label images */
+    private static final int MAX_LABEL = 65535;
+
+    /** Image to threshold */
+    private ImageProcessor image;
+
+    /** Label image, 8-bit, 16-bit or float with integer values */
+    private ImageProcessor labels;
+
+    /** If true label 0 is background */
+    private boolean ignoreZero = true;
+
+    /** Number of threads */
+    private int threads;
+
+    /**
+     * Creates a new instance of RegionOtsu
+     *
+     * @param image an <code>ImageProcessor</code> to threshold
+     * @param labels the label image, same size as the image
+     */
+    public RegionOtsu(ImageProcessor image, ImageProcessor labels) {
+        if (image.getWidth() != labels.getWidth() || image.getHeight() != labels.getHeight()) {
+            throw new IllegalArgumentException("Image and labels must have the same size");
+        }
+        this.image = image;
+        this.labels = labels;
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Thresholds every region and binarizes the image in one pass.
+     *
+     * @return the threshold of every region and the binary image
+     */
+    public RegionOtsuResult compute() {
+        byte[] levels = levels();
+        Histogram quantization = quantization(levels);
+        int[] lab = labels();
+        int[] K = solve(levels, lab);
+
+        double[] thresholds = new double[K.length];
+        for (int l = 0; l < K.length; l++) {
+            if (K[l] < 0) {
+                thresholds[l] = Double.NaN;
+            }
+            else {
+                thresholds[l] = (quantization == null) ? K[l] : quantization.value(K[l]);
+            }
+        }
+
+        byte[] binary = new byte[levels.length];
+        for (int i = 0; i < binary.length; i++) {
+            int k = K[lab[i]];
+            if (k >= 0 && (levels[i] & 0xff) >= k) {
+                binary[i] = (byte) 255;
+            }
+        }
+        return new RegionOtsuResult(thresholds, binary, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Get the Otsu threshold of every region. Use {@link #compute()} to get
+     * the binary image from the same pass.
+     *
+     * @return the threshold of each region indexed by its label, the first
+     * value of the upper class. Labels not present in the label image, and
+     * label 0 when it's background, are NaN.
+     */
+    public double[] threshold() {
+        return compute().getThresholds();
+    }
+
+    /**
+     * Binarize every region with its own threshold. Use {@link #compute()}
+     * to get the thresholds from the same pass.
+     *
+     * @return a new <code>ByteProcessor</code>, 255 for pixels in the upper
+     * class of its region and 0 in other case, background pixels are 0.
+     */
+    public ImageProcessor binarize() {
+        return compute().getBinary();
+    }
+
+    /**
+     * Accumulates all the region histograms in one parallel pass and solves
+     * the threshold of each region.
+     *
+     * @return the threshold bin of each label, -1 for missing or background
+     * labels
+     */
+    private int[] solve(final byte[] levels, final int[] lab) {
+        final int N = levels.length;
+
+        // compact index of each label present
+        int max = 0;
+        for (int i = 0; i < N; i++) {
+            max = (lab[i] > max) ? lab[i] : max;
+        }
+        final int[] index = new int[max + 1];
+        for (int i = 0; i < N; i++) {
+            index[lab[i]] = 1;
+        }
+        if (ignoreZero) {
+            index[0] = 0;
+        }
+        int regions = 0;
+        for (int l = 0; l <= max; l++) {
+            index[l] = (index[l] != 0) ? regions++ : -1;
+        }
+
+        // every thread has its own table, so many regions take less threads
+        final int size = regions * L;
+        int n = Math.max(1, Math.min(threads, Math.min(N / 65536, TABLES_SIZE / Math.max(1, size))));
+        final int[][] tables = new int[n][];
+        final int chunk = (N + n - 1) / n;
+        ArrayList<Runnable> jobs = new ArrayList<Runnable>(n);
+        for (int t = 0; t < n; t++) {
+            final int id = t;
+            jobs.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    int[] table = new int[size];
+                    int to = Math.min(N, (id + 1) * chunk);
+                    for (int i = id * chunk; i < to; i++) {
+                        int r = index[lab[i]];
+                        if (r >= 0) {
+                            table[r * L + (levels[i] & 0xff)]++;
+                        }
+                    }
+                    tables[id] = table;
+                }
+            });
+        }
+        Workers.run(jobs);
+
+        int[] table = tables[0];
+        for (int t = 1; t < n; t++) {
+            for (int j = 0; j < size; j++) {
+                table[j] += tables[t][j];
+            }
+        }
+
+        int[] K = new int[max + 1];
+        for (int l = 0; l <= max; l++) {
+            int r = index[l];
+            if (r < 0) {
+                K[l] = -1;
+            }
+            else {
+                int flat = flatLevel(table, r * L);
+                K[l] = (flat >= 0) ? flat + 1 : new CumulativeMoments(table, r * L, L).maxVarianceThreshold();
+            }
+        }
+        return K;
+    }
+
+    /**
+     * @return the only gray level of the histogram starting at offset, or -1
+     * if it has more than one
+     */
+    private static int flatLevel(int[] table, int offset) {
+        int level = -1;
+        for (int j = 0; j < L; j++) {
+            if (table[offset + j] != 0) {
+                if (level >= 0) {
+                    return -1;
+                }
+                level = j;
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Quantizes 16-bit and float images into the levels in the same pass that
+     * builds the histogram, null for 8-bit images.
+     */
+    private Histogram quantization(byte[] levels) {
+        if (image.getPixels() instanceof byte[]) {
+            return null;
+        }
+        return new HistogramBuilder(L).build(image, levels);
+    }
+
+    /**
+     * Gray levels of 8-bit images, or the buffer for the levels of 16-bit and
+     * float images.
+     */
+    private byte[] levels() {
+        if (image.getPixels() instanceof byte[]) {
+            return (byte[]) image.getPixels();
+        }
+        return new byte[image.getWidth() * image.getHeight()];
+    }
+
+    /**
+     * Label of each pixel
+     */
+    private int[] labels() {
+        Object pixels = labels.getPixels();
+        int N = labels.getWidth() * labels.getHeight();
+        int[] lab = new int[N];
+        if (pixels instanceof byte[]) {
+            byte[] p = (byte[]) pixels;
+            for (int i = 0; i < N; i++) {
+                lab[i] = p[i] & 0xff;
+            }
+        }
+        else if (pixels instanceof short[]) {
+            short[] p = (short[]) pixels;
+            for (int i = 0; i < N; i++) {
+                lab[i] = p[i] & 0xffff;
+            }
+        }
+        else if (pixels instanceof float[]) {
+            // the tables are indexed by label, check the range before they
+            // are allocated
+            float[] p = (float[]) pixels;
+            int max = Math.max(MAX_LABEL, N);
+            for (int i = 0; i < N; i++) {
+                float v = p[i];
+                if (!(v >= 0 && v <= max) || v != (int) v) {
+                    throw new IllegalArgumentException("Labels must be whole numbers in [0, " + max + "]: " + v);
+                }
+                lab[i] = (int) v;
+            }
+        }
+        else {
+            throw new IllegalArgumentException("Only 8-bit, 16-bit and float label images are supported");
+        }
+        return lab;
+    }
+
+    /**
+     * @param ignoreZero if true the label 0 is background and is not
+     * thresholded, its threshold is NaN and its pixels are 0
+     */
+    public void setIgnoreZero(boolean ignoreZero) {
+        this.ignoreZero = ignoreZero;
+    }
+
+    /**
+     * @param threads the number of threads to use
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+}
@@ -0,0 +1,61 @@
+package segmentation;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Immutable result of a {@link RegionOtsu} thresholding: the threshold of
+ * every region and the binary image, from a single pass over the image.
+ * Instances can be shared freely between threads.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public final class RegionOtsuResult {
+
+    /** Threshold of each region indexed by its label */
+    private final double[] thresholds;
+
+    /** The binary image, 255 for the upper class of each region */
+    private final byte[] binary;
+
+    /** Image width */
+    private final int width;
+
+    /** Image height */
+    private final int height;
+
+    /**
+     * The arrays are not copied.
+     */
+    RegionOtsuResult(double[] thresholds, byte[] binary, int width, int height) {
+        this.thresholds = thresholds;
+        this.binary = binary;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return the threshold of each region indexed by its label, the first
+     * value of the upper class. Labels not present in the label image, and
+     * label 0 when it's background, are NaN.
+     */
+    public double[] getThresholds() {
+        return thresholds.clone();
+    }
+
+    /**
+     * @param label a label
+     * @return the threshold of the region, NaN if the label isn't thresholded
+     */
+    public double getThreshold(int label) {
+        return (label >= 0 && label < thresholds.length) ? thresholds[label] : Double.NaN;
+    }
+
+    /**
+     * @return a new <code>ByteProcessor</code>, 255 for pixels in the upper
+     * class of its region and 0 in other case, background pixels are 0.
+     */
+    public ImageProcessor getBinary() {
+        return new ByteProcessor(width, height, binary.clone());
+    }
+}
@@ -0,0 +1,200 @@
+package segmentation;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+/**
+ * Otsu thresholding for video and image stacks. Instead of rebuilding the
+ * histogram of every frame, an exponentially decayed running histogram is
+ * kept: each new frame multiplies the running histogram by the decay factor
+ * and adds its own normalized histogram, so the threshold follows slow
+ * changes of the illumination without flickering from frame to frame. Frames
+ * may be subsampled, only every n-th pixel is folded in, with an offset that
+ * rotates from frame to frame.
+ *
+ * The current threshold is published in a volatile field, so a display thread
+ * can read it at any time without locking while frames are being updated.
+ *
+ * The frames are binned in a fixed range, given with
+ * {@link #setRange(double, double)}. Without it, 8-bit frames are binned over
+ * their 256 levels, in bins of 256 / bins levels, and 16-bit and float frames
+ * between the extremes of the first frame.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class StreamingOtsu {
+
+    /** Number of bins */
+    private final int bins;
+
+    /** The running histogram */
+    private final double[] histogram;
+
+    /** Decay factor of the running histogram */
+    private double decay;
+
+    /** Only every subsampling-th pixel is counted */
+    private int subsampling = 1;
+
+    /** Number of frames folded in */
+    private long frames;
+
+    /** Binning of the frames, null until it's known. Its counts are unused */
+    private Histogram binning;
+
+    /** The current threshold, NaN before the first frame */
+    private volatile double threshold = Double.NaN;
+
+    /**
+     * Creates a streaming thresholder with 256 bins
+     *
+     * @param decay weight of the past frames in [0, 1), 0 thresholds each
+     * frame alone
+     */
+    public StreamingOtsu(double decay) {
+        this(decay, 256);
+    }
+
+    /**
+     * Creates a streaming thresholder
+     *
+     * @param decay weight of the past frames in [0, 1), 0 thresholds each
+     * frame alone
+     * @param bins number of bins
+     */
+    public StreamingOtsu(double decay, int bins) {
+        if (bins < 2) {
+            throw new IllegalArgumentException("At least two bins are needed");
+        }
+        setDecay(decay);
+        this.bins = bins;
+        this.histogram = new double[bins];
+    }
+
+    /**
+     * Folds a new frame in the running histogram and updates the threshold.
+     *
+     * @param frame the new frame
+     * @return the threshold for this frame, the first value of the upper class
+     */
+    public synchronized double update(ImageProcessor frame) {
+        Object pixels = frame.getPixels();
+        if (binning == null) {
+            if (pixels instanceof byte[]) {
+                binning = new Histogram(new int[bins], 0, 256.0 / bins, 0, 255, 0);
+            }
+            else {
+                Histogram first = new HistogramBuilder(bins).build(frame);
+                binning = new Histogram(new int[bins], first.value(0), first.binWidth(),
+                        first.min(), first.max(), 0);
+            }
+        }
+
+        int N = frame.getWidth() * frame.getHeight();
+        int step = subsampling;
+        int offset = (int) (frames % step);
+        double[] counts = new double[bins];
+        int n = 0;
+        if (pixels instanceof byte[]) {
+            // bin of each gray level
+            int[] lut = new int[256];
+            for (int v = 0; v < 256; v++) {
+                lut[v] = binning.bin(v);
+            }
+            byte[] p = (byte[]) pixels;
+            for (int i = offset; i < N; i += step) {
+                counts[lut[p[i] & 0xff]]++;
+                n++;
+            }
+        }
+        else {
+            for (int i = offset; i < N; i += step) {
+                float v = frame.getf(i);
+                if (v == v) {
+                    counts[binning.bin(v)]++;
+                    n++;
+                }
+            }
+        }
+
+        double norm = (n > 0) ? 1.0 / n : 0;
+        double keep = (frames == 0) ? 0 : decay;
+        for (int j = 0; j < bins; j++) {
+            histogram[j] = keep * histogram[j] + counts[j] * norm;
+        }
+        frames++;
+
+        int K = new CumulativeMoments(histogram).maxVarianceThreshold();
+        double th = binning.value(K);
+        this.threshold = th;
+        return th;
+    }
+
+    /**
+     * Thresholds all the slices of a stack in order.
+     *
+     * @param stack the frames
+     * @return the threshold of each frame
+     */
+    public double[] update(ImageStack stack) {
+        double[] thresholds = new double[stack.getSize()];
+        for (int s = 0; s < thresholds.length; s++) {
+            thresholds[s] = update(stack.getProcessor(s + 1));
+        }
+        return thresholds;
+    }
+
+    /**
+     * Lock-free read of the current threshold.
+     *
+     * @return the threshold of the last frame, NaN if no frame was given
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Forgets all the past frames. A fixed range is kept.
+     */
+    public synchronized void reset() {
+        for (int j = 0; j < bins; j++) {
+            histogram[j] = 0;
+        }
+        frames = 0;
+        threshold = Double.NaN;
+    }
+
+    /**
+     * @param decay weight of the past frames in [0, 1)
+     */
+    public synchronized void setDecay(double decay) {
+        if (!(decay >= 0 && decay < 1)) {
+            throw new IllegalArgumentException("Decay must be in [0, 1)");
+        }
+        this.decay = decay;
+    }
+
+    /**
+     * @param subsampling only every subsampling-th pixel of each frame is
+     * counted, 1 counts them all
+     */
+    public synchronized void setSubsampling(int subsampling) {
+        if (subsampling < 1) {
+            throw new IllegalArgumentException("Subsampling must be positive");
+        }
+        this.subsampling = subsampling;
+    }
+
+    /**
+     * Fix the binned range of the frames.
+     *
+     * @param min lower limit of the first bin
+     * @param max upper limit of the last bin
+     */
+    public synchronized void setRange(double min, double max) {
+        if (!(max > min)) {
+            throw new IllegalArgumentException("Invalid range [" + min + ", " + max + "]");
+        }
+        binning = new Histogram(new int[bins], min, (max - min) / bins, min, max, 0);
+    }
+}
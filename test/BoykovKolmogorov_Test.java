@@ -0,0 +1,93 @@
+package test;
+
+import graph.BoykovKolmogorov;
+import graph.Dinic;
+import graph.Edge;
+import graph.Graph;
+import graph.Vertex;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Checks the cuts of the Boykov Kolmogorov solver on general graphs against
+ * the max flow found by Dinic. The graphs have arcs entering the source and
+ * leaving the sink, so both search trees must follow the residual arcs in
+ * the direction of the flow. The source side must be the vertexes reachable
+ * from the source in the residual graph, as in Dinic.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class BoykovKolmogorov_Test {
+
+    public static void main(String[] args) {
+        // source 0 and sink 4
+        check(5, new int[][]{{0, 1, 7}, {1, 0, 9}, {0, 2, 5}, {2, 1, 5}, {3, 1, 2},
+                    {1, 4, 4}, {4, 1, 5}});
+        check(5, new int[][]{{0, 2, 4}, {3, 1, 5}, {1, 4, 4}, {4, 1, 2}, {1, 2, 5}});
+
+        Random random = new Random(11);
+        int graphs = 2000;
+        for (int g = 0; g < graphs; g++) {
+            int n = 2 + random.nextInt(10);
+            int m = random.nextInt(4 * n);
+            int[][] arcs = new int[m][];
+            for (int i = 0; i < m; i++) {
+                int u = random.nextInt(n);
+                int v = random.nextInt(n - 1);
+                if (v >= u) {
+                    v++;
+                }
+                arcs[i] = new int[]{u, v, random.nextInt(10)};
+            }
+            check(n, arcs);
+        }
+        System.out.println(graphs + " random graphs, the cuts are minimal");
+    }
+
+    /**
+     * Solves a graph with both solvers, the source is the first vertex and
+     * the sink the last one. Repeated arcs are dropped.
+     *
+     * @param n number of vertexes
+     * @param arcs the arcs as {source, target, capacity}
+     */
+    private static void check(int n, int[][] arcs) {
+        Graph graph = new Graph(n);
+        Vertex[] vertexes = new Vertex[n];
+        for (int v = 0; v < n; v++) {
+            vertexes[v] = new Vertex(v);
+            graph.addVertex(vertexes[v]);
+        }
+        float[][] capacity = new float[n][n];
+        for (int[] arc : arcs) {
+            if (graph.addEdge(new Edge(vertexes[arc[0]], vertexes[arc[1]], arc[2]))) {
+                capacity[arc[0]][arc[1]] = arc[2];
+            }
+        }
+
+        Dinic dinic = new Dinic(graph, vertexes[0], vertexes[n - 1]);
+        double flow = dinic.maxFlow();
+        BitSet reachable = new BitSet(n);
+        for (Vertex v : dinic.minCut()) {
+            reachable.set(v.name());
+        }
+        BitSet side = new BoykovKolmogorov(graph, vertexes[0], vertexes[n - 1]).sourceSide();
+        if (!side.get(0) || side.get(n - 1)) {
+            throw new IllegalStateException("The cut doesn't separate the terminals: " + side);
+        }
+        double cut = 0;
+        for (int u = side.nextSetBit(0); u >= 0; u = side.nextSetBit(u + 1)) {
+            for (int v = 0; v < n; v++) {
+                if (!side.get(v)) {
+                    cut += capacity[u][v];
+                }
+            }
+        }
+        if (cut != flow) {
+            throw new IllegalStateException("Cut " + side + " of " + cut + ", max flow " + flow);
+        }
+        if (!side.equals(reachable)) {
+            throw new IllegalStateException("Source side " + side + ", reachable from the source " + reachable);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package test;
+
+import graph.GridBoykovKolmogorov;
+import graph.GridGraph;
+import graph.MappedGridGraph;
+import graph.RegionPushRelabel;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Solves a grid with many one row regions out of core, checking that no more
+ * region buffers than the working set are ever allocated during the solve
+ * while the regions are loaded again and again, and that the cut is the one
+ * found in memory.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class MappedRegions_Test {
+
+    public static void main(String[] args) throws IOException {
+        int width = 80;
+        int height = 60;
+        int workingSet = 3;
+
+        File file = File.createTempFile("regions", ".graph");
+        file.deleteOnExit();
+        MappedGridGraph mapped = MappedGridGraph.copyOf(grid(width, height), file, 1);
+        mapped.setResidentRegions(workingSet);
+
+        RegionPushRelabel solver = new RegionPushRelabel(mapped);
+        solver.maxFlow();
+        check(mapped.getResidentRegions() <= workingSet,
+                "Regions in memory: " + mapped.getResidentRegions());
+        check(mapped.getRegionLoads() > mapped.regions(),
+                "The regions were not loaded again: " + mapped.getRegionLoads());
+        check(mapped.getRegionBuffers() <= workingSet,
+                "Region buffers allocated: " + mapped.getRegionBuffers());
+
+        GridBoykovKolmogorov bk = new GridBoykovKolmogorov(grid(width, height));
+        check(bk.sourceSide().equals(solver.sourceSide()), "The min cuts differ");
+        mapped.close();
+
+        System.out.println(mapped.regions() + " regions, " + mapped.getRegionLoads()
+                + " loads, " + mapped.getRegionBuffers() + " buffers");
+    }
+
+    /**
+     * @return a grid with random capacities, the same on every call
+     */
+    private static GridGraph grid(int width, int height) {
+        Random random = new Random(7);
+        GridGraph graph = new GridGraph(width, height);
+        for (int p = 0; p < graph.size(); p++) {
+            graph.setTerminals(p, random.nextInt(20), random.nextInt(20));
+            for (int d = GridGraph.RIGHT; d <= GridGraph.DOWN; d++) {
+                if (graph.neighbour(p, d) >= 0) {
+                    graph.setEdge(p, d, random.nextInt(10), random.nextInt(10));
+                }
+            }
+        }
+        return graph;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -1,10 +1,9 @@
 package test;
 
 
-import graph.BoykovKolmogorov;
-import graph.Edge;
-import graph.Graph;
-import graph.Vertex;
+import graph.GridBoykovKolmogorov;
+import graph.GridGraph;
+import graph.Quantizer;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import ij.plugin.filter.PlugInFilter;
@@ -12,7 +11,6 @@ import ij.plugin.frame.RoiManager;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
-import java.util.ArrayList;
 
 /*
  * To change this template, choose Tools | Templates
@@ -69,76 +67,36 @@ public class Mincut_Segment implements PlugInFilter {
         System.out.println("obj_m = " + objMean);
 
         byte[] pixels = (byte[]) ip.getPixels();
-        Graph graph = new Graph(pixels.length + 2);
-        Vertex[] V = new Vertex[pixels.length];
-
-        Vertex source = new Vertex(0);
-        Vertex sink = new Vertex(pixels.length + 1);
-
-        // add source vertex into the graph and edges from the source        
-        ArrayList<Edge> sourceEdges = new ArrayList<Edge>(pixels.length);
-        for (int i = 0; i < pixels.length; i++) {
-            Vertex v = new Vertex(i + 1);
-            V[i] = v;
-            double p = (double) (pixels[i] & 0xff);
-            float weight = (float) Math.exp(-(((objMean - p) * (objMean - p)))
-                    / (2 * objSTDV * objSTDV));
-            sourceEdges.add(new Edge(source, v, weight));
-        }
-        graph.addConnectedVertex(source, sourceEdges);
-
-
+        GridGraph graph = new GridGraph(width, heigth);
 
         for (int y = 0; y < heigth; y++) {
             for (int x = 0; x < width; x++) {
                 int v_idx = (y * width) + x;
                 double pv = (double) (pixels[v_idx] & 0xff);
-                ArrayList<Edge> vEdges = new ArrayList<Edge>(5);
 
-                // add edges from vertex v to it's neighbours vertex w 
+                // t-links from the source and to the sink
+                float weight_sv = (float) Math.exp(
+                        -(((objMean - pv) * (objMean - pv))) / (2 * objSTDV * objSTDV));
+                float weight_vt = (float) Math.exp(
+                        -(((bkgMean - pv) * (bkgMean - pv))) / (2 * bkgSTDV * bkgSTDV));
+                graph.setTerminals(v_idx, weight_sv, weight_vt);
+
+                // n-links from vertex v to its right and lower neighbours
                 if (x < width - 1) {
-                    int w_idx = (y * width) + (x + 1);
-                    double pw = (double) (pixels[w_idx] & 0xff);
+                    double pw = (double) (pixels[v_idx + 1] & 0xff);
                     float weight_vw = (float) Math.exp(
                             -(((pv - pw) * (pv - pw))) / (2 * imSTDV * imSTDV));
-                    vEdges.add(new Edge(V[v_idx], V[w_idx], weight_vw));
-                }
-                if (x > 0) {
-                    int w_idx = (y * width) + (x - 1);
-                    double pw = (double) (pixels[w_idx] & 0xff);
-                    float weight_vw = (float) Math.exp(
-                            -(((pv - pw) * (pv - pw))) / (2 * imSTDV * imSTDV));
-                    vEdges.add(new Edge(V[v_idx], V[w_idx], weight_vw));
+                    graph.setEdge(v_idx, GridGraph.RIGHT, weight_vw, weight_vw);
                 }
                 if (y < heigth - 1) {
-                    int w_idx = ((y + 1) * width) + x;
-                    double pw = (double) (pixels[w_idx] & 0xff);
+                    double pw = (double) (pixels[v_idx + width] & 0xff);
                     float weight_vw = (float) Math.exp(
                             -(((pv - pw) * (pv - pw))) / (2 * imSTDV * imSTDV));
-                    vEdges.add(new Edge(V[v_idx], V[w_idx], weight_vw));
+                    graph.setEdge(v_idx, GridGraph.DOWN, weight_vw, weight_vw);
                 }
-                if (y > 0) {
-                    int w_idx = ((y - 1) * width) + x;
-                    double pw = (double) (pixels[w_idx] & 0xff);
-                    float weight_vw = (float) Math.exp(
-                            -(((pv - pw) * (pv - pw))) / (2 * imSTDV * imSTDV));
-                    vEdges.add(new Edge(V[v_idx], V[w_idx], weight_vw));
-                }
-
-                // add edge from vertex v to sink
-                float weight_vt = (float) Math.exp(
-                        -(((bkgMean - pv) * (bkgMean - pv))) / (2 * bkgSTDV * bkgSTDV));
-                vEdges.add(new Edge(V[v_idx], sink, weight_vt));
-
-
-
-                // add vertex to graph
-                graph.addConnectedVertex(V[v_idx], vEdges);
             }
         }
 
-        graph.addVertex(sink);
-
         System.out.println("end image to graph");
         
         long timeStart = System.currentTimeMillis();
@@ -161,18 +119,14 @@ public class Mincut_Segment implements PlugInFilter {
         // -----------------------------------------------------------------
 
 
-        BoykovKolmogorov BK = new BoykovKolmogorov(graph, source, sink);
-        ArrayList<Vertex> mincut = BK.minCut(width);
+        // whole number capacities, so the residuals are exact
+        Quantizer.forMaximum(1).apply(graph);
+
+        GridBoykovKolmogorov BK = new GridBoykovKolmogorov(graph);
+        BK.maxFlow();
 
         byte[] segmented = new byte[pixels.length];
-        for (Vertex v : mincut) {
-            int name = v.name();
-            if (name == 0 || name  == pixels.length + 2) {
-                continue;
-            } else {
-                segmented[name - 1] = (byte) 255;
-            }    
-        }
+        BK.sourceSide(segmented, (byte) 255);
         
         // -----------------------------------------------------------------
 
@@ -0,0 +1,84 @@
+package util;
+
+import java.util.List;
+
+/**
+ * Runs a set of jobs on their own threads and waits for all of them, the
+ * fork / join used by the parallel filters, histograms and max flow solvers.
+ * The last job runs on the calling thread.
+ *
+ * A job that fails makes the whole run fail: the exception is thrown again,
+ * wrapped, on the calling thread once every job has finished. If the calling
+ * thread is interrupted while waiting, it still waits for the jobs, so no
+ * job is left writing into the results, and then fails with its interrupted
+ * flag set. In both cases the results of the jobs must not be used.
+ *
+ * @author <a ref ="zianfanti@gmail.com"> Zian Fanti<a/>
+ */
+public class Workers {
+
+    private Workers() {
+    }
+
+    /**
+     * Runs the jobs concurrently and waits for all of them.
+     *
+     * @param jobs the jobs
+     * @throws IllegalStateException if a job failed or the calling thread was
+     * interrupted
+     */
+    public static void run(List<? extends Runnable> jobs) {
+        int n = jobs.size();
+        if (n == 0) {
+            return;
+        }
+        final Throwable[] failure = new Throwable[n];
+        Thread[] workers = new Thread[n - 1];
+        for (int i = 0; i < workers.length; i++) {
+            final int id = i;
+            final Runnable job = jobs.get(i);
+            workers[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        job.run();
+                    }
+                    catch (Throwable ex) {
+                        failure[id] = ex;
+                    }
+                }
+            });
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        try {
+            jobs.get(n - 1).run();
+        }
+        catch (Throwable ex) {
+            failure[n - 1] = ex;
+        }
+
+        boolean interrupted = false;
+        for (int i = 0; i < workers.length; i++) {
+            while (true) {
+                try {
+                    workers[i].join();
+                    break;
+                }
+                catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the worker threads");
+        }
+        for (int i = 0; i < n; i++) {
+            if (failure[i] != null) {
+                throw new IllegalStateException("A worker thread failed", failure[i]);
+            }
+        }
+    }
+}